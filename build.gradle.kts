@@ -6,6 +6,7 @@ plugins {
     id("io.spring.nullability") version "0.0.12"
     id("pl.allegro.tech.build.axion-release") version "1.21.1"
     id("com.diffplug.spotless") version "8.4.0"
+    id("me.champeau.jmh") version "0.7.3"
 }
 
 scmVersion {
@@ -45,6 +46,18 @@ dependencies {
 
     // JTE
     implementation("gg.jte:jte-spring-boot-starter-4:3.2.3")
+    // Typed template models are only rendered by applications that generate them with jte-models
+    compileOnly("gg.jte:jte-models:3.2.3")
+    testImplementation("gg.jte:jte-models:3.2.3")
+
+    // Micrometer, metrics are only recorded when the application provides it
+    compileOnly("io.micrometer:micrometer-core")
+    testImplementation("io.micrometer:micrometer-core")
+
+    // Reactor, the Flux based SSE emitter is only used by Spring WebFlux applications
+    compileOnly("io.projectreactor:reactor-core")
+    testImplementation("io.projectreactor:reactor-core")
+    testImplementation("io.projectreactor:reactor-test")
 
     // JUnit
     testRuntimeOnly("org.junit.platform:junit-platform-launcher")
@@ -61,6 +74,18 @@ tasks.test {
     }
 }
 
+// Benchmarks in src/jmh, run with ./gradlew jmh
+jmh {
+    benchmarkMode.set(listOf("thrpt"))
+    timeUnit.set("s")
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    // Reports the allocation rate per operation next to the throughput
+    profilers.add("gc")
+    resultFormat.set("JSON")
+}
+
 publishing {
     publications {
         create<MavenPublication>("maven") {
@@ -0,0 +1,92 @@
+package io.github.gadnex.jtedatastar;
+
+import gg.jte.ContentType;
+import gg.jte.TemplateEngine;
+import gg.jte.resolve.ResourceCodeResolver;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import org.springframework.context.support.StaticMessageSource;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/** Creates the Datastar objects used by the benchmarks without starting a Spring context */
+final class BenchmarkSupport {
+
+  private BenchmarkSupport() {}
+
+  /**
+   * Create a Datastar object that renders the benchmark templates and sends on the caller thread
+   *
+   * @return The Datastar object
+   */
+  static Datastar datastar() {
+    return new Datastar(templateEngine(), ".jte", messageSource());
+  }
+
+  /**
+   * Create a Datastar object that renders the benchmark templates and sends with a dispatcher
+   *
+   * @param dispatcher The dispatcher used to send events
+   * @return The Datastar object
+   */
+  static Datastar datastar(EventDispatcher dispatcher) {
+    return Datastar.builder(templateEngine(), ".jte", messageSource())
+        .dispatcher(dispatcher)
+        .build();
+  }
+
+  /**
+   * Create in-memory SSE emitters
+   *
+   * @param count The number of SSE emitters
+   * @return The SSE emitters
+   */
+  static Set<SseEmitter> emitters(int count) {
+    Set<SseEmitter> emitters = new HashSet<>();
+    for (int i = 0; i < count; i++) {
+      emitters.add(new CountingSseEmitter());
+    }
+    return emitters;
+  }
+
+  /**
+   * Sum the bytes sent to in-memory SSE emitters
+   *
+   * @param emitters The SSE emitters created by {@link #emitters(int)}
+   * @return The number of bytes sent
+   */
+  static long bytes(Set<SseEmitter> emitters) {
+    long bytes = 0;
+    for (SseEmitter emitter : emitters) {
+      bytes += ((CountingSseEmitter) emitter).bytes();
+    }
+    return bytes;
+  }
+
+  private static TemplateEngine templateEngine() {
+    try {
+      // Compiled once per fork, rendering is measured without the template compiler
+      Path classDirectory = Files.createTempDirectory("jte-benchmark");
+      TemplateEngine templateEngine =
+          TemplateEngine.create(
+              new ResourceCodeResolver("jte"), classDirectory, ContentType.Html);
+      templateEngine.prepareForRendering("Rows.jte");
+      templateEngine.prepareForRendering("Greeting.jte");
+      return templateEngine;
+    } catch (IOException ex) {
+      throw new IllegalStateException("cannot create template class directory", ex);
+    }
+  }
+
+  private static StaticMessageSource messageSource() {
+    StaticMessageSource messageSource = new StaticMessageSource();
+    messageSource.addMessage("greeting", Locale.ENGLISH, "Hello {0}!");
+    messageSource.addMessage("greeting", Locale.GERMAN, "Hallo {0}!");
+    messageSource.addMessage("greeting", Locale.FRENCH, "Bonjour {0} !");
+    messageSource.addMessage("greeting", Locale.JAPANESE, "こんにちは、{0}さん！");
+    return messageSource;
+  }
+}
@@ -0,0 +1,26 @@
+package io.github.gadnex.jtedatastar;
+
+import java.util.Set;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/** In-memory SSE emitter that only counts the bytes sent to it, so no I/O is measured */
+class CountingSseEmitter extends SseEmitter {
+
+  private long bytes;
+
+  @Override
+  public void send(SseEmitter.SseEventBuilder eventBuilder) {
+    Set<SseEmitter.DataWithMediaType> dataSet = eventBuilder.build();
+    for (SseEmitter.DataWithMediaType data : dataSet) {
+      if (data.getData() instanceof byte[] encoded) {
+        bytes += encoded.length;
+      } else {
+        bytes += data.getData().toString().length();
+      }
+    }
+  }
+
+  long bytes() {
+    return bytes;
+  }
+}
@@ -0,0 +1,34 @@
+package io.github.gadnex.jtedatastar;
+
+import java.util.Set;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/** Emit an ExecuteScript event to a single SSE emitter */
+@State(Scope.Thread)
+public class ExecuteScriptBenchmark {
+
+  private Datastar datastar;
+  private Set<SseEmitter> emitters;
+
+  /** Create the Datastar object */
+  @Setup
+  public void setup() {
+    datastar = BenchmarkSupport.datastar();
+    emitters = BenchmarkSupport.emitters(1);
+  }
+
+  /**
+   * Emit a script
+   *
+   * @return The number of bytes sent, so the work is not eliminated
+   */
+  @Benchmark
+  public long executeScript() {
+    datastar.executeScript(emitters).script("console.log('Hello')").emit();
+    return BenchmarkSupport.bytes(emitters);
+  }
+}
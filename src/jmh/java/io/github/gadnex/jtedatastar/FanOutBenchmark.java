@@ -0,0 +1,54 @@
+package io.github.gadnex.jtedatastar;
+
+import java.util.List;
+import java.util.Set;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/** Emit one rendered PatchElements event to many SSE emitters */
+@State(Scope.Thread)
+public class FanOutBenchmark {
+
+  /** Number of SSE emitters the event is sent to */
+  @Param({"1", "10", "100", "1000", "10000"})
+  public int emitterCount;
+
+  /** How the event is sent to the SSE emitters */
+  @Param({"CALLER_THREAD", "VIRTUAL_THREADS"})
+  public FanOutMode mode;
+
+  private EventDispatcher dispatcher;
+  private Datastar datastar;
+  private Set<SseEmitter> emitters;
+  private final List<String> rows = List.of("One", "Two", "Three");
+
+  /** Create the dispatcher and the SSE emitters */
+  @Setup
+  public void setup() {
+    dispatcher = EventDispatcher.builder().fanOutMode(mode).poolSize(1).build();
+    datastar = BenchmarkSupport.datastar(dispatcher);
+    emitters = BenchmarkSupport.emitters(emitterCount);
+  }
+
+  /** Stop the dispatcher threads */
+  @TearDown
+  public void tearDown() {
+    dispatcher.close();
+  }
+
+  /**
+   * Emit a small fragment to every SSE emitter
+   *
+   * @return The number of bytes sent, so the work is not eliminated
+   */
+  @Benchmark
+  public long fanOut() {
+    datastar.patchElements(emitters).template("Rows").attribute("rows", rows).emit();
+    return BenchmarkSupport.bytes(emitters);
+  }
+}
@@ -0,0 +1,46 @@
+package io.github.gadnex.jtedatastar;
+
+import java.util.Locale;
+import java.util.Set;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/** Render a localized template and emit it as a PatchElements event to a single SSE emitter */
+@State(Scope.Thread)
+public class LocalizedPatchElementsBenchmark {
+
+  /** Locale used to render the template */
+  @Param({"en", "de", "ja"})
+  public String locale;
+
+  private Datastar datastar;
+  private Set<SseEmitter> emitters;
+  private Locale templateLocale;
+
+  /** Create the Datastar object */
+  @Setup
+  public void setup() {
+    datastar = BenchmarkSupport.datastar();
+    emitters = BenchmarkSupport.emitters(1);
+    templateLocale = Locale.forLanguageTag(locale);
+  }
+
+  /**
+   * Render the localized fragment
+   *
+   * @return The number of bytes sent, so the work is not eliminated
+   */
+  @Benchmark
+  public long localized() {
+    datastar
+        .patchElements(emitters)
+        .template("Greeting", templateLocale)
+        .attribute("name", "John")
+        .emit();
+    return BenchmarkSupport.bytes(emitters);
+  }
+}
@@ -0,0 +1,46 @@
+package io.github.gadnex.jtedatastar;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/** Render a table template and emit it as a PatchElements event to a single SSE emitter */
+@State(Scope.Thread)
+public class PatchElementsBenchmark {
+
+  /** Number of table rows rendered by the template */
+  @Param({"1", "100", "1000"})
+  public int rows;
+
+  private Datastar datastar;
+  private Set<SseEmitter> emitters;
+  private List<String> rowData;
+
+  /** Create the Datastar object and the template attributes */
+  @Setup
+  public void setup() {
+    datastar = BenchmarkSupport.datastar();
+    emitters = BenchmarkSupport.emitters(1);
+    rowData = new ArrayList<>();
+    for (int i = 0; i < rows; i++) {
+      rowData.add("Row <" + i + ">");
+    }
+  }
+
+  /**
+   * Render a table fragment
+   *
+   * @return The number of bytes sent, so the work is not eliminated
+   */
+  @Benchmark
+  public long table() {
+    datastar.patchElements(emitters).template("Rows").attribute("rows", rowData).emit();
+    return BenchmarkSupport.bytes(emitters);
+  }
+}
@@ -0,0 +1,43 @@
+package io.github.gadnex.jtedatastar;
+
+import java.util.Set;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/** Serialize signals and emit them as a PatchSignals event to a single SSE emitter */
+@State(Scope.Thread)
+public class PatchSignalsBenchmark {
+
+  /** Number of signals in the event */
+  @Param({"1", "10", "100"})
+  public int signals;
+
+  private Datastar datastar;
+  private Set<SseEmitter> emitters;
+
+  /** Create the Datastar object */
+  @Setup
+  public void setup() {
+    datastar = BenchmarkSupport.datastar();
+    emitters = BenchmarkSupport.emitters(1);
+  }
+
+  /**
+   * Emit the signals
+   *
+   * @return The number of bytes sent, so the work is not eliminated
+   */
+  @Benchmark
+  public long patchSignals() {
+    PatchSignals patchSignals = datastar.patchSignals(emitters);
+    for (int i = 0; i < signals; i++) {
+      patchSignals.signal("signal" + i, i);
+    }
+    patchSignals.emit();
+    return BenchmarkSupport.bytes(emitters);
+  }
+}
@@ -1,7 +1,8 @@
 package io.github.gadnex.jtedatastar;
 
 import java.util.Set;
-import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import org.jspecify.annotations.Nullable;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 /** Abstract parent class for all Datastar emitters to implement common features */
@@ -10,8 +11,14 @@ public abstract class AbstractDatastarEmitter {
   /** Set of all SSE emitters that the event will be emitted to */
   protected Set<SseEmitter> sseEmitters;
 
-  /** The event that will be emitted */
-  protected SseEmitter.SseEventBuilder event;
+  /** The event that will be emitted, encoded straight into an SSE frame */
+  protected SseFrame.Builder event;
+
+  /** The dispatcher used to send the event to the SSE emitters */
+  protected final EventDispatcher dispatcher;
+
+  /** The topic whose SSE emitters the event is emitted to, resolved when the event is emitted */
+  private @Nullable String topic;
 
   /**
    * Constructor
@@ -19,19 +26,51 @@ public abstract class AbstractDatastarEmitter {
    * @param sseEmitters The set of SSE emitters to which to emit the events
    */
   protected AbstractDatastarEmitter(Set<SseEmitter> sseEmitters) {
+    this(sseEmitters, EventDispatcher.DEFAULT);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param sseEmitters The set of SSE emitters to which to emit the events
+   * @param dispatcher The dispatcher used to send the event to the SSE emitters
+   */
+  protected AbstractDatastarEmitter(Set<SseEmitter> sseEmitters, EventDispatcher dispatcher) {
     this.sseEmitters = Set.copyOf(sseEmitters);
-    this.event = SseEmitter.event();
-    this.event.id(UUID.randomUUID().toString());
+    this.dispatcher = dispatcher;
+    this.event = SseFrame.builder();
+    this.event.id(EventIds.next());
   }
 
-  /** Emit the event to all SSE emitters */
-  protected void emitEvents() {
-    for (SseEmitter sseEmitter : sseEmitters) {
-      try {
-        sseEmitter.send(event);
-      } catch (Exception ex) {
-        sseEmitter.completeWithError(ex);
-      }
+  /**
+   * Leave the id line out of the event, so that the encoded frame can be sent more than once. Must
+   * be called before the event is encoded.
+   */
+  void withoutId() {
+    this.event = SseFrame.builder();
+  }
+
+  /**
+   * Emit the event to the SSE emitters registered under a topic when it is emitted, instead of to
+   * the set of SSE emitters
+   *
+   * @param topic The topic registered with {@link DatastarConnections}
+   */
+  void topic(String topic) {
+    this.topic = topic;
+  }
+
+  /**
+   * Emit the event to all SSE emitters. The event is encoded into a single frame once and the same
+   * frame is written to every SSE emitter.
+   *
+   * @return A future that completes with the outcome per SSE emitter
+   */
+  protected CompletableFuture<EmitResult> emitEvents() {
+    SseFrame frame = event.build();
+    if (topic != null) {
+      return dispatcher.dispatch(topic, frame);
     }
+    return dispatcher.dispatch(sseEmitters, frame);
   }
 }
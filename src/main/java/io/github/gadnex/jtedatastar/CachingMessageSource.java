@@ -0,0 +1,100 @@
+package io.github.gadnex.jtedatastar;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.jspecify.annotations.Nullable;
+import org.springframework.context.MessageSource;
+import org.springframework.context.MessageSourceResolvable;
+
+/**
+ * A MessageSource that keeps the messages looked up in another MessageSource, with one shared
+ * {@link Localizer} per locale.
+ *
+ * <p>PatchElements rendered with a locale use the shared Localizer of the locale instead of
+ * creating a new one per emit, so every message key of a template is resolved only once. The
+ * messages of a locale are looked up again after the cache duration, which should match the reload
+ * interval of a reloadable MessageSource, or after {@link #refresh()}. Like {@code
+ * spring.messages.cache-duration}, a zero cache duration looks up every message again, and no cache
+ * duration keeps the messages until they are refreshed. Messages with arguments are not cached.
+ */
+public final class CachingMessageSource implements MessageSource {
+
+  private final MessageSource messageSource;
+  private final long cacheDurationNanos;
+  private final Map<Locale, Entry> localizers = new ConcurrentHashMap<>();
+
+  /** The cache duration of messages that are kept until they are refreshed */
+  private static final long FOREVER = -1;
+
+  /**
+   * Constructor
+   *
+   * @param messageSource The MessageSource to look up messages in
+   * @param cacheDuration How long looked up messages are kept, zero to look them up every time, or
+   *     null to keep them until {@link #refresh()}
+   */
+  public CachingMessageSource(MessageSource messageSource, @Nullable Duration cacheDuration) {
+    if (cacheDuration != null && cacheDuration.isNegative()) {
+      throw new IllegalArgumentException("cacheDuration must not be negative");
+    }
+    this.messageSource = messageSource;
+    this.cacheDurationNanos = cacheDuration == null ? FOREVER : cacheDuration.toNanos();
+  }
+
+  /**
+   * The shared Localizer of a locale, used to render templates. With a zero cache duration every
+   * call returns a new Localizer that looks up every message.
+   *
+   * @param locale The locale
+   * @return The Localizer
+   */
+  public Localizer localizer(Locale locale) {
+    if (cacheDurationNanos == 0) {
+      return new Localizer(messageSource, locale);
+    }
+    long now = System.nanoTime();
+    Entry entry = localizers.get(locale);
+    if (entry == null || expired(entry, now)) {
+      entry =
+          localizers.compute(
+              locale,
+              (key, existing) ->
+                  existing == null || expired(existing, now)
+                      ? new Entry(new Localizer(messageSource, key, true), now)
+                      : existing);
+    }
+    return entry.localizer();
+  }
+
+  /** Forget all looked up messages, for example after the messages were reloaded */
+  public void refresh() {
+    localizers.clear();
+  }
+
+  @Override
+  public @Nullable String getMessage(
+      String code, Object @Nullable [] args, @Nullable String defaultMessage, Locale locale) {
+    return messageSource.getMessage(code, args, defaultMessage, locale);
+  }
+
+  @Override
+  public String getMessage(String code, Object @Nullable [] args, Locale locale) {
+    if (cacheDurationNanos != 0 && (args == null || args.length == 0)) {
+      return localizer(locale).lookup(code);
+    }
+    return messageSource.getMessage(code, args, locale);
+  }
+
+  @Override
+  public String getMessage(MessageSourceResolvable resolvable, Locale locale) {
+    return messageSource.getMessage(resolvable, locale);
+  }
+
+  private boolean expired(Entry entry, long now) {
+    return cacheDurationNanos > 0 && now - entry.createdNanos() >= cacheDurationNanos;
+  }
+
+  private record Entry(Localizer localizer, long createdNanos) {}
+}
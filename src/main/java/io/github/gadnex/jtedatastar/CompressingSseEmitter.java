@@ -0,0 +1,145 @@
+package io.github.gadnex.jtedatastar;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.zip.Checksum;
+import org.jspecify.annotations.Nullable;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * An SSE emitter that compresses the event stream with gzip or deflate.
+ *
+ * <p>Every send is compressed into its own segment that ends with a full flush, so the browser can
+ * decompress and dispatch every event, or every {@link DatastarBatch}, as soon as it arrives.
+ * Frames encoded by Datastar are compressed once and the compressed segment is shared by all
+ * connections the frame is sent to. Events smaller than the minimum size are written as
+ * uncompressed deflate blocks, which costs no CPU.
+ *
+ * <p>Use {@link #negotiate(String, Long)} to compress only when the Accept-Encoding request header
+ * allows it. Response compression of the server must not be applied to the same response.
+ */
+public class CompressingSseEmitter extends SseEmitter {
+
+  /** The default minimum size of an event to be compressed */
+  public static final int DEFAULT_MIN_SIZE = 256;
+
+  private final SseCompression compression;
+  private final int minSize;
+  private final Checksum checksum;
+  private long size;
+  private boolean started;
+  private boolean finished;
+
+  /**
+   * Constructor
+   *
+   * @param timeout The timeout value in milliseconds, -1 for no timeout
+   * @param compression The content encoding of the event stream
+   * @param minSize The minimum size in bytes of an event to be compressed
+   */
+  public CompressingSseEmitter(Long timeout, SseCompression compression, int minSize) {
+    super(timeout);
+    if (minSize < 0) {
+      throw new IllegalArgumentException("minSize must not be negative");
+    }
+    this.compression = compression;
+    this.minSize = minSize;
+    this.checksum = compression.checksum();
+  }
+
+  /**
+   * Create an SSE emitter that compresses the event stream if the client accepts gzip or deflate,
+   * otherwise a plain SSE emitter
+   *
+   * @param acceptEncoding The Accept-Encoding request header, or null if the request has none
+   * @param timeout The timeout value in milliseconds, -1 for no timeout
+   * @return The SSE emitter
+   */
+  public static SseEmitter negotiate(@Nullable String acceptEncoding, Long timeout) {
+    SseCompression compression = SseCompression.negotiate(acceptEncoding);
+    if (compression == null) {
+      return new SseEmitter(timeout);
+    }
+    return new CompressingSseEmitter(timeout, compression, DEFAULT_MIN_SIZE);
+  }
+
+  /**
+   * The content encoding of the event stream
+   *
+   * @return The content encoding
+   */
+  public SseCompression compression() {
+    return compression;
+  }
+
+  @Override
+  protected void extendResponse(ServerHttpResponse outputMessage) {
+    super.extendResponse(outputMessage);
+    HttpHeaders headers = outputMessage.getHeaders();
+    headers.set(HttpHeaders.CONTENT_ENCODING, compression.token());
+    headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+  }
+
+  @Override
+  public synchronized void send(SseEmitter.SseEventBuilder eventBuilder) throws IOException {
+    if (finished) {
+      throw new IllegalStateException("The SSE emitter has already been completed");
+    }
+    SseFrame frame = SseFrame.of(eventBuilder);
+    byte[] bytes = frame != null ? frame.bytes() : encode(eventBuilder);
+    byte[] segment;
+    if (bytes.length < minSize) {
+      segment = SseCompression.stored(bytes);
+    } else if (frame != null) {
+      segment = frame.deflated();
+    } else {
+      segment = SseCompression.deflate(bytes);
+    }
+    checksum.update(bytes, 0, bytes.length);
+    size += bytes.length;
+    write(segment);
+  }
+
+  @Override
+  public synchronized void complete() {
+    if (!finished) {
+      finished = true;
+      try {
+        write(compression.trailer(checksum, size));
+      } catch (IOException | IllegalStateException ex) {
+        // The client has gone away, there is nobody left to read the end of the stream
+      }
+    }
+    super.complete();
+  }
+
+  private void write(byte[] segment) throws IOException {
+    byte[] bytes = segment;
+    if (!started) {
+      started = true;
+      byte[] header = compression.header();
+      bytes = new byte[header.length + segment.length];
+      System.arraycopy(header, 0, bytes, 0, header.length);
+      System.arraycopy(segment, 0, bytes, header.length, segment.length);
+    }
+    send(Set.of(new ResponseBodyEmitter.DataWithMediaType(bytes, MediaType.TEXT_PLAIN)));
+  }
+
+  private static byte[] encode(SseEmitter.SseEventBuilder eventBuilder) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (ResponseBodyEmitter.DataWithMediaType data : eventBuilder.build()) {
+      byte[] bytes =
+          data.getData() instanceof byte[] encoded
+              ? encoded
+              : data.getData().toString().getBytes(StandardCharsets.UTF_8);
+      out.writeBytes(bytes);
+    }
+    return out.toByteArray();
+  }
+}
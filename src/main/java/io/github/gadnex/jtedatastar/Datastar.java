@@ -1,9 +1,16 @@
 package io.github.gadnex.jtedatastar;
 
 import gg.jte.TemplateEngine;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import org.jspecify.annotations.Nullable;
 import org.springframework.context.MessageSource;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import tools.jackson.databind.json.JsonMapper;
 
 /**
  * A Spring Bean class used to construct instances of Datastar Server Sent Event (SSE) types
@@ -14,6 +21,12 @@ public class Datastar {
   private final TemplateEngine templateEngine;
   private final String templateSuffix;
   private final MessageSource messageSource;
+  private final EventDispatcher dispatcher;
+  private final DatastarConnections connections;
+  private final JsonMapper jsonMapper;
+  private final RenderCache renderCache;
+  private final boolean minifiedTemplates;
+  private final Map<String, DatastarTemplate> templates = new ConcurrentHashMap<>();
 
   /**
    * HTTP Request Header sent by all Datastar requests. Used by backend controller methods to filter
@@ -31,9 +44,219 @@ public class Datastar {
    */
   public Datastar(
       TemplateEngine templateEngine, String templateSuffix, MessageSource messageSource) {
+    this(templateEngine, templateSuffix, messageSource, new DatastarConnections());
+  }
+
+  private Datastar(
+      TemplateEngine templateEngine,
+      String templateSuffix,
+      MessageSource messageSource,
+      DatastarConnections connections) {
+    this(
+        templateEngine,
+        templateSuffix,
+        messageSource,
+        EventDispatcher.builder().connections(connections).build(),
+        connections,
+        new JsonMapper(),
+        new RenderCache(0, Duration.ZERO),
+        false);
+  }
+
+  /**
+   * Constructor for the Datastar Spring Bean
+   *
+   * @param templateEngine The JTE template engine used to render HTML PatchElements
+   * @param templateSuffix The template suffix used for JTE template files
+   * @param messageSource The Spring MessageSource used for getting language specific text for
+   *     template rendering
+   * @param dispatcher The dispatcher used to send events to the SSE emitters
+   * @param connections The registry of SSE emitters used to emit events to a topic
+   * @param jsonMapper The JSON mapper shared by all PatchSignals events to serialize signals
+   * @param renderCache The cache used by PatchElements that opt in to caching rendered HTML
+   * @param minifiedTemplates Whether the templates are minified by {@link HtmlMinifier}, so the
+   *     rendered lines are written verbatim instead of being trimmed
+   */
+  public Datastar(
+      TemplateEngine templateEngine,
+      String templateSuffix,
+      MessageSource messageSource,
+      EventDispatcher dispatcher,
+      DatastarConnections connections,
+      JsonMapper jsonMapper,
+      RenderCache renderCache,
+      boolean minifiedTemplates) {
     this.templateEngine = templateEngine;
     this.templateSuffix = templateSuffix;
     this.messageSource = messageSource;
+    this.dispatcher = dispatcher;
+    this.connections = connections;
+    this.jsonMapper = jsonMapper;
+    this.renderCache = renderCache;
+    this.minifiedTemplates = minifiedTemplates;
+  }
+
+  /**
+   * Create a builder for the Datastar Spring Bean, starting from the defaults of {@link
+   * #Datastar(TemplateEngine, String, MessageSource)}
+   *
+   * @param templateEngine The JTE template engine used to render HTML PatchElements
+   * @param templateSuffix The template suffix used for JTE template files
+   * @param messageSource The Spring MessageSource used for getting language specific text for
+   *     template rendering
+   * @return The Datastar builder
+   */
+  public static Builder builder(
+      TemplateEngine templateEngine, String templateSuffix, MessageSource messageSource) {
+    return new Builder(templateEngine, templateSuffix, messageSource);
+  }
+
+  /** Builder for {@link Datastar} */
+  public static final class Builder {
+
+    private final TemplateEngine templateEngine;
+    private final String templateSuffix;
+    private final MessageSource messageSource;
+    private @Nullable EventDispatcher dispatcher;
+    private @Nullable DatastarConnections connections;
+    private @Nullable JsonMapper jsonMapper;
+    private @Nullable RenderCache renderCache;
+    private boolean minifiedTemplates;
+
+    private Builder(
+        TemplateEngine templateEngine, String templateSuffix, MessageSource messageSource) {
+      this.templateEngine = templateEngine;
+      this.templateSuffix = templateSuffix;
+      this.messageSource = messageSource;
+    }
+
+    /**
+     * The dispatcher used to send events to the SSE emitters. It should remove failed SSE emitters
+     * from the same connections as {@link #connections(DatastarConnections)}.
+     *
+     * @param dispatcher The event dispatcher
+     * @return The builder
+     */
+    public Builder dispatcher(EventDispatcher dispatcher) {
+      this.dispatcher = dispatcher;
+      return this;
+    }
+
+    /**
+     * The registry of SSE emitters used to emit events to a topic
+     *
+     * @param connections The connections
+     * @return The builder
+     */
+    public Builder connections(DatastarConnections connections) {
+      this.connections = connections;
+      return this;
+    }
+
+    /**
+     * The JSON mapper shared by all PatchSignals events to serialize signals
+     *
+     * @param jsonMapper The JSON mapper
+     * @return The builder
+     */
+    public Builder jsonMapper(JsonMapper jsonMapper) {
+      this.jsonMapper = jsonMapper;
+      return this;
+    }
+
+    /**
+     * The cache used by PatchElements that opt in to caching rendered HTML
+     *
+     * @param renderCache The render cache
+     * @return The builder
+     */
+    public Builder renderCache(RenderCache renderCache) {
+      this.renderCache = renderCache;
+      return this;
+    }
+
+    /**
+     * Whether the templates are minified by {@link HtmlMinifier}, so the rendered lines are written
+     * verbatim instead of being trimmed
+     *
+     * @param minifiedTemplates True if the templates are minified
+     * @return The builder
+     */
+    public Builder minifiedTemplates(boolean minifiedTemplates) {
+      this.minifiedTemplates = minifiedTemplates;
+      return this;
+    }
+
+    /**
+     * Create the Datastar Spring Bean. Without a dispatcher, the events are sent on the calling
+     * thread.
+     *
+     * @return The Datastar Spring Bean
+     */
+    public Datastar build() {
+      DatastarConnections datastarConnections =
+          connections != null ? connections : new DatastarConnections();
+      return new Datastar(
+          templateEngine,
+          templateSuffix,
+          messageSource,
+          dispatcher != null
+              ? dispatcher
+              : EventDispatcher.builder().connections(datastarConnections).build(),
+          datastarConnections,
+          jsonMapper != null ? jsonMapper : new JsonMapper(),
+          renderCache != null ? renderCache : new RenderCache(0, Duration.ZERO),
+          minifiedTemplates);
+    }
+  }
+
+  /**
+   * Get the resolved and loaded template with a name, to pass to {@link
+   * PatchElements#template(DatastarTemplate)}. Every template is resolved once and the same handle
+   * is returned for the same name.
+   *
+   * @param templateName The template name without the template suffix
+   * @return The template
+   * @throws gg.jte.TemplateNotFoundException If the template does not exist
+   */
+  public DatastarTemplate template(String templateName) {
+    if (templateName == null || templateName.isBlank()) {
+      throw new IllegalArgumentException("templateName is null or empty");
+    }
+    return templates.computeIfAbsent(
+        templateName,
+        name ->
+            new DatastarTemplate(templateEngine, name, name + templateSuffix, minifiedTemplates));
+  }
+
+  /**
+   * Resolve and load templates before the first events are emitted, and render each of them a
+   * number of times without parameters so that rendering is compiled before the first request.
+   * When the templates are minified, a warning is logged for every template that renders indented
+   * lines because it was not minified by the build.
+   *
+   * @param templateNames The template names without the template suffix
+   * @param warmUpRenders The number of renders per template, 0 to only load the templates
+   */
+  public void preload(Collection<String> templateNames, int warmUpRenders) {
+    if (warmUpRenders < 0) {
+      throw new IllegalArgumentException("warmUpRenders must not be negative");
+    }
+    for (String templateName : templateNames) {
+      DatastarTemplate template = template(templateName);
+      template.checkMinified();
+      template.warmUp(warmUpRenders);
+    }
+  }
+
+  /**
+   * Forget the messages looked up for templates rendered with a locale, for example after the
+   * messages were reloaded. Does nothing when the MessageSource does not keep looked up messages.
+   */
+  public void refreshMessages() {
+    if (messageSource instanceof CachingMessageSource cachingMessageSource) {
+      cachingMessageSource.refresh();
+    }
   }
 
   /**
@@ -46,7 +269,14 @@ public class Datastar {
     if (sseEmitters == null || sseEmitters.isEmpty()) {
       throw new IllegalArgumentException("sseEmitters is null or empty");
     }
-    return new PatchElements(templateEngine, templateSuffix, sseEmitters, messageSource);
+    return new PatchElements(
+        templateEngine,
+        templateSuffix,
+        sseEmitters,
+        messageSource,
+        dispatcher,
+        renderCache,
+        minifiedTemplates);
   }
 
   /**
@@ -62,6 +292,25 @@ public class Datastar {
     return patchElements(Set.of(sseEmitter));
   }
 
+  /**
+   * Construct a PatchElements object for all SSE emitters registered under a topic.
+   *
+   * @param topic The topic registered with {@link DatastarConnections}
+   * @return The PatchElements object
+   */
+  public PatchElements patchElements(String topic) {
+    return toTopic(
+        new PatchElements(
+            templateEngine,
+            templateSuffix,
+            Set.of(),
+            messageSource,
+            dispatcher,
+            renderCache,
+            minifiedTemplates),
+        topic);
+  }
+
   /**
    * Construct a PatchSignals object with a collection of SSE emitters
    *
@@ -72,7 +321,7 @@ public class Datastar {
     if (sseEmitters == null || sseEmitters.isEmpty()) {
       throw new IllegalArgumentException("sseEmitters is null or empty");
     }
-    return new PatchSignals(sseEmitters);
+    return new PatchSignals(sseEmitters, dispatcher, jsonMapper);
   }
 
   /**
@@ -88,6 +337,16 @@ public class Datastar {
     return patchSignals(Set.of(sseEmitter));
   }
 
+  /**
+   * Construct a PatchSignals object for all SSE emitters registered under a topic
+   *
+   * @param topic The topic registered with {@link DatastarConnections}
+   * @return The PatchSignals object
+   */
+  public PatchSignals patchSignals(String topic) {
+    return toTopic(new PatchSignals(Set.of(), dispatcher, jsonMapper), topic);
+  }
+
   /**
    * Construct an ExecuteScript object with a collection of SSE emitters
    *
@@ -98,7 +357,7 @@ public class Datastar {
     if (sseEmitters == null || sseEmitters.isEmpty()) {
       throw new IllegalArgumentException("sseEmitters is null or empty");
     }
-    return new ExecuteScript(sseEmitters);
+    return new ExecuteScript(sseEmitters, dispatcher);
   }
 
   /**
@@ -113,4 +372,118 @@ public class Datastar {
     }
     return executeScript(Set.of(sseEmitter));
   }
+
+  /**
+   * Construct an ExecuteScript object for all SSE emitters registered under a topic
+   *
+   * @param topic The topic registered with {@link DatastarConnections}
+   * @return The ExecuteScript object
+   */
+  public ExecuteScript executeScript(String topic) {
+    return toTopic(new ExecuteScript(Set.of(), dispatcher), topic);
+  }
+
+  /**
+   * Construct a DatastarBatch object with a collection of SSE emitters, to emit several events with
+   * a single send and flush per SSE emitter
+   *
+   * @param sseEmitters Set of SSE emitters
+   * @return The DatastarBatch object
+   */
+  public DatastarBatch batch(Set<SseEmitter> sseEmitters) {
+    if (sseEmitters == null || sseEmitters.isEmpty()) {
+      throw new IllegalArgumentException("sseEmitters is null or empty");
+    }
+    return new DatastarBatch(this, sseEmitters, null, dispatcher);
+  }
+
+  /**
+   * Construct a DatastarBatch object with a single SSE emitter, to emit several events with a
+   * single send and flush
+   *
+   * @param sseEmitter The SSE emitter
+   * @return The DatastarBatch object
+   */
+  public DatastarBatch batch(SseEmitter sseEmitter) {
+    if (sseEmitter == null) {
+      throw new IllegalArgumentException("sseEmitter is null");
+    }
+    return batch(Set.of(sseEmitter));
+  }
+
+  /**
+   * Construct a DatastarBatch object for all SSE emitters registered under a topic, to emit several
+   * events with a single send and flush per SSE emitter
+   *
+   * @param topic The topic registered with {@link DatastarConnections}
+   * @return The DatastarBatch object
+   */
+  public DatastarBatch batch(String topic) {
+    if (topic == null || topic.isBlank()) {
+      throw new IllegalArgumentException("topic is null or empty");
+    }
+    return new DatastarBatch(this, Set.of(), topic, dispatcher);
+  }
+
+  /**
+   * Encode a PatchElements event once into an immutable event that can be emitted any number of
+   * times, to any SSE emitters or topics
+   *
+   * @param patch Configures the PatchElements event, without emitting it
+   * @return The prepared event
+   */
+  public PreparedDatastarEvent preparePatchElements(Consumer<PatchElements> patch) {
+    PatchElements patchElements =
+        new PatchElements(
+            templateEngine,
+            templateSuffix,
+            Set.of(),
+            messageSource,
+            dispatcher,
+            renderCache,
+            minifiedTemplates);
+    patchElements.withoutId();
+    patch.accept(patchElements);
+    patchElements.encode();
+    return new PreparedDatastarEvent(patchElements.event.build(), dispatcher);
+  }
+
+  /**
+   * Encode a PatchSignals event once into an immutable event that can be emitted any number of
+   * times, to any SSE emitters or topics
+   *
+   * @param patch Configures the PatchSignals event, without emitting it
+   * @return The prepared event
+   */
+  public PreparedDatastarEvent preparePatchSignals(Consumer<PatchSignals> patch) {
+    PatchSignals patchSignals = new PatchSignals(Set.of(), dispatcher, jsonMapper);
+    patchSignals.withoutId();
+    patch.accept(patchSignals);
+    patchSignals.encode();
+    return new PreparedDatastarEvent(patchSignals.event.build(), dispatcher);
+  }
+
+  /**
+   * Encode an ExecuteScript event once into an immutable event that can be emitted any number of
+   * times, to any SSE emitters or topics
+   *
+   * @param script Configures the ExecuteScript event, without emitting it
+   * @return The prepared event
+   */
+  public PreparedDatastarEvent prepareExecuteScript(Consumer<ExecuteScript> script) {
+    ExecuteScript executeScript = new ExecuteScript(Set.of(), dispatcher);
+    executeScript.withoutId();
+    script.accept(executeScript);
+    executeScript.encode();
+    return new PreparedDatastarEvent(executeScript.event.build(), dispatcher);
+  }
+
+  private <T extends AbstractDatastarEmitter> T toTopic(T emitter, String topic) {
+    if (topic == null || topic.isBlank()) {
+      throw new IllegalArgumentException("topic is null or empty");
+    }
+    // The SSE emitters are looked up when the event is emitted, so it can be replayed
+    emitter.topic(topic);
+    return emitter;
+  }
 }
@@ -0,0 +1,147 @@
+package io.github.gadnex.jtedatastar;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import org.jspecify.annotations.Nullable;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Collects several Datastar events and emits them to every SSE emitter with a single send and
+ * flush, instead of one send and flush per event.
+ *
+ * <p>Consecutive PatchElements events whose elements can be patched together, such as patches by
+ * element ID or appends to the same selector, are merged into a single datastar-patch-elements
+ * event.
+ */
+public class DatastarBatch {
+
+  private final Datastar datastar;
+  private final Set<SseEmitter> sseEmitters;
+  private final @Nullable String topic;
+  private final EventDispatcher dispatcher;
+  private final List<SseFrame> frames = new ArrayList<>();
+  private @Nullable PatchElements openPatch;
+  private @Nullable String openMergeKey;
+
+  /**
+   * Constructor
+   *
+   * @param datastar The Datastar bean used to create the events
+   * @param sseEmitters The set of SSE emitters to which to emit the events
+   * @param topic The topic to emit the events to instead of the set of SSE emitters, or null
+   * @param dispatcher The dispatcher used to send the events to the SSE emitters
+   */
+  DatastarBatch(
+      Datastar datastar,
+      Set<SseEmitter> sseEmitters,
+      @Nullable String topic,
+      EventDispatcher dispatcher) {
+    this.datastar = datastar;
+    this.sseEmitters = Set.copyOf(sseEmitters);
+    this.topic = topic;
+    this.dispatcher = dispatcher;
+  }
+
+  /**
+   * Add a PatchElements event to the batch. The event is rendered when it is added.
+   *
+   * @param patch Configures the PatchElements event, without emitting it
+   * @return The DatastarBatch object
+   */
+  public DatastarBatch patchElements(Consumer<PatchElements> patch) {
+    PatchElements patchElements =
+        topic == null ? datastar.patchElements(sseEmitters) : datastar.patchElements(topic);
+    patch.accept(patchElements);
+    String mergeKey = patchElements.mergeKey();
+    if (openPatch != null && mergeKey != null && mergeKey.equals(openMergeKey)) {
+      patchElements.encodeElements(openPatch.event);
+      return this;
+    }
+    closePatch();
+    patchElements.encode();
+    openPatch = patchElements;
+    openMergeKey = mergeKey;
+    return this;
+  }
+
+  /**
+   * Add a PatchSignals event to the batch
+   *
+   * @param patch Configures the PatchSignals event, without emitting it
+   * @return The DatastarBatch object
+   */
+  public DatastarBatch patchSignals(Consumer<PatchSignals> patch) {
+    PatchSignals patchSignals =
+        topic == null ? datastar.patchSignals(sseEmitters) : datastar.patchSignals(topic);
+    patch.accept(patchSignals);
+    patchSignals.encode();
+    add(patchSignals);
+    return this;
+  }
+
+  /**
+   * Add an ExecuteScript event to the batch
+   *
+   * @param script Configures the ExecuteScript event, without emitting it
+   * @return The DatastarBatch object
+   */
+  public DatastarBatch executeScript(Consumer<ExecuteScript> script) {
+    ExecuteScript executeScript =
+        topic == null ? datastar.executeScript(sseEmitters) : datastar.executeScript(topic);
+    script.accept(executeScript);
+    executeScript.encode();
+    add(executeScript);
+    return this;
+  }
+
+  /** Emit all events of the batch and wait until they have been sent to all SSE emitters */
+  public void emit() {
+    emitAsync().join();
+  }
+
+  /**
+   * Emit all events of the batch without waiting for the sends to finish
+   *
+   * @return A future that completes with the outcome per SSE emitter
+   */
+  public CompletableFuture<EmitResult> emitAsync() {
+    closePatch();
+    if (frames.isEmpty()) {
+      throw new IllegalStateException("No events added to the batch");
+    }
+    SseFrame frame;
+    if (frames.size() == 1) {
+      frame = frames.getFirst();
+    } else {
+      for (SseFrame event : frames) {
+        String name = event.name();
+        if (name != null) {
+          dispatcher.metrics().emitted(name, event.size());
+        }
+      }
+      // The joined frame has no event type, so the events are not counted again when dispatched
+      frame = SseFrame.join(frames);
+    }
+    frames.clear();
+    if (topic != null) {
+      return dispatcher.dispatch(topic, frame);
+    }
+    return dispatcher.dispatch(sseEmitters, frame);
+  }
+
+  private void add(AbstractDatastarEmitter emitter) {
+    closePatch();
+    frames.add(emitter.event.build());
+  }
+
+  private void closePatch() {
+    if (openPatch != null) {
+      frames.add(openPatch.event.build());
+      openPatch = null;
+      openMergeKey = null;
+    }
+  }
+}
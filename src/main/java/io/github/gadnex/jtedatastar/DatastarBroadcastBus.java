@@ -0,0 +1,48 @@
+package io.github.gadnex.jtedatastar;
+
+/**
+ * Transport that carries events emitted to a topic to the other nodes of a cluster.
+ *
+ * <p>An event emitted to a topic is rendered and encoded once, sent to the SSE emitters of the
+ * topic on the emitting node, and published on the bus. Every other node receives the encoded
+ * frame and sends it to its own SSE emitters of the topic, without rendering it again.
+ *
+ * <p>{@link InProcessBroadcastBus} connects nodes running in one JVM and {@link
+ * MulticastBroadcastBus} connects nodes with UDP multicast. Other transports, such as a message
+ * broker, implement this interface.
+ */
+public interface DatastarBroadcastBus extends AutoCloseable {
+
+  /**
+   * Publish an encoded frame emitted to a topic to all other nodes. The frame is not delivered back
+   * to the listener of this node.
+   *
+   * @param topic The topic the frame was emitted to
+   * @param frame The encoded frame
+   */
+  void publish(String topic, SseFrame frame);
+
+  /**
+   * Set the listener that receives the frames published by the other nodes
+   *
+   * @param listener The listener
+   */
+  void subscribe(Listener listener);
+
+  /** Stop receiving frames from the other nodes */
+  @Override
+  default void close() {}
+
+  /** Receives the frames published by the other nodes */
+  @FunctionalInterface
+  interface Listener {
+
+    /**
+     * A frame has been published to a topic by another node
+     *
+     * @param topic The topic
+     * @param frame The encoded frame
+     */
+    void received(String topic, SseFrame frame);
+  }
+}
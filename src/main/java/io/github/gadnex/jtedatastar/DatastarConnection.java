@@ -0,0 +1,247 @@
+package io.github.gadnex.jtedatastar;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.jspecify.annotations.Nullable;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.node.JsonNodeFactory;
+import tools.jackson.databind.node.ObjectNode;
+
+/**
+ * An SSE emitter registered with {@link DatastarConnections}, the topics it belongs to, and its
+ * outbound queue when queueing is enabled.
+ */
+public final class DatastarConnection {
+
+  /** The maximum number of targets whose last received content is remembered */
+  static final int MAX_FINGERPRINTS = 1024;
+
+  /** The maximum number of signals whose last sent value is remembered */
+  static final int MAX_SHADOW_SIGNALS = 1024;
+
+  private final SseEmitter sseEmitter;
+  private final Set<String> topics = ConcurrentHashMap.newKeySet();
+  private final @Nullable OutboundQueue queue;
+  private final int slot;
+  private final Map<String, Long> fingerprints = new HashMap<>();
+  private @Nullable ObjectNode shadow;
+  private long knownDropped;
+
+  /**
+   * Constructor
+   *
+   * @param sseEmitter The registered SSE emitter
+   * @param queue The outbound queue, or null to write directly to the SSE emitter
+   * @param slot The slot of the heartbeat wheel the connection is kept in
+   */
+  DatastarConnection(SseEmitter sseEmitter, @Nullable OutboundQueue queue, int slot) {
+    this.sseEmitter = sseEmitter;
+    this.queue = queue;
+    this.slot = slot;
+  }
+
+  /**
+   * The registered SSE emitter
+   *
+   * @return The SSE emitter
+   */
+  public SseEmitter sseEmitter() {
+    return sseEmitter;
+  }
+
+  /**
+   * The slot of the heartbeat wheel the connection is kept in
+   *
+   * @return The slot
+   */
+  int slot() {
+    return slot;
+  }
+
+  /**
+   * Whether the connection already received the same content for the target patched by a frame.
+   * Otherwise the fingerprint of the frame is remembered as the last content of the target, or the
+   * target is forgotten if the frame has no fingerprint. Once the outbound queue dropped a frame,
+   * the content remembered so far is forgotten, as the dropped frame may never reach the client.
+   *
+   * @param frame The frame to send
+   * @return True if the frame can be skipped
+   */
+  synchronized boolean unchanged(SseFrame frame) {
+    String target = frame.target();
+    if (target == null) {
+      return false;
+    }
+    forgetIfDropped();
+    Long fingerprint = frame.fingerprint();
+    if (fingerprint == null) {
+      fingerprints.remove(target);
+      return false;
+    }
+    Long previous = fingerprints.put(target, fingerprint);
+    if (previous == null && fingerprints.size() > MAX_FINGERPRINTS) {
+      // Keep the memory per connection bounded, forgotten targets are simply sent again
+      fingerprints.clear();
+      fingerprints.put(target, fingerprint);
+    }
+    return fingerprint.equals(previous);
+  }
+
+  /**
+   * Forget the content and signal values the connection received, so that the next frames are sent
+   * whole
+   */
+  synchronized void forget() {
+    fingerprints.clear();
+    shadow = null;
+  }
+
+  /**
+   * The frame to send in place of a PatchSignals frame. A frame that only patches changed signals
+   * is reduced to the signals that differ from the values last sent to the connection. Other frames
+   * are sent whole and update the values last sent.
+   *
+   * @param frame The frame to send
+   * @param deltas The reduced frames encoded for other connections by the same dispatch, by their
+   *     changed signals, so that connections with the same changes share the frame
+   * @return The frame to send, or null if no signal changed
+   */
+  synchronized @Nullable SseFrame signalsFrame(SseFrame frame, Map<JsonNode, SseFrame> deltas) {
+    SignalsPatch patch = frame.signals();
+    if (patch == null) {
+      if (PatchSignals.EVENT_TYPE.equals(frame.name())) {
+        // The frame patches signals it does not keep, so the values last sent are not known
+        shadow = null;
+      }
+      return frame;
+    }
+    forgetIfDropped();
+    ObjectNode current = shadow;
+    if (current == null) {
+      if (!patch.onlyChanged()) {
+        return frame;
+      }
+      current = JsonNodeFactory.instance.objectNode();
+      shadow = current;
+    }
+    ObjectNode changed = patch.applyTo(current);
+    if (current.size() > MAX_SHADOW_SIGNALS) {
+      // Keep the memory per connection bounded, the next frame is compared to no values
+      shadow = null;
+    }
+    if (changed == null || !patch.onlyChanged()) {
+      return frame;
+    }
+    if (changed.isEmpty()) {
+      return null;
+    }
+    return deltas.computeIfAbsent(changed, signals -> patch.delta(frame.id(), changed));
+  }
+
+  private void forgetIfDropped() {
+    long dropped = droppedEvents();
+    if (dropped != knownDropped) {
+      // A dropped frame may have carried content or signals, so the browser can miss what was sent
+      fingerprints.clear();
+      shadow = null;
+      knownDropped = dropped;
+    }
+  }
+
+  /**
+   * The topics the SSE emitter is registered under
+   *
+   * @return Unmodifiable view of the topics
+   */
+  public Set<String> topics() {
+    return Collections.unmodifiableSet(topics);
+  }
+
+  /**
+   * Whether events are written through a bounded outbound queue
+   *
+   * @return True if the connection has an outbound queue
+   */
+  public boolean isQueued() {
+    return queue != null;
+  }
+
+  /**
+   * The number of events waiting in the outbound queue. A queue that stays full points to a slow
+   * client.
+   *
+   * @return The queue depth, 0 if the connection has no queue
+   */
+  public int queueDepth() {
+    return queue == null ? 0 : queue.depth();
+  }
+
+  /**
+   * The maximum number of events in the outbound queue
+   *
+   * @return The queue capacity, 0 if the connection has no queue
+   */
+  public int queueCapacity() {
+    return queue == null ? 0 : queue.capacity();
+  }
+
+  /**
+   * The number of events dropped because the outbound queue was full
+   *
+   * @return The number of dropped events
+   */
+  public long droppedEvents() {
+    return queue == null ? 0 : queue.dropped();
+  }
+
+  /**
+   * The number of times an event was emitted while the outbound queue was full
+   *
+   * @return The number of overflows
+   */
+  public long overflows() {
+    return queue == null ? 0 : queue.overflows();
+  }
+
+  /**
+   * The number of PatchSignals events merged into an earlier queued PatchSignals event
+   *
+   * @return The number of coalesced events
+   */
+  public long coalescedEvents() {
+    return queue == null ? 0 : queue.coalesced();
+  }
+
+  SendOutcome enqueue(SseFrame frame) {
+    if (queue == null) {
+      throw new IllegalStateException("Connection has no outbound queue");
+    }
+    return queue.offer(frame);
+  }
+
+  boolean completeWhenDrained() {
+    if (queue == null) {
+      return false;
+    }
+    queue.completeWhenDrained();
+    return true;
+  }
+
+  void close() {
+    if (queue != null) {
+      queue.close();
+    }
+  }
+
+  boolean addTopic(String topic) {
+    return topics.add(topic);
+  }
+
+  boolean removeTopic(String topic) {
+    return topics.remove(topic);
+  }
+}
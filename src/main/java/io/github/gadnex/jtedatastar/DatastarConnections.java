@@ -0,0 +1,518 @@
+package io.github.gadnex.jtedatastar;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.jspecify.annotations.Nullable;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * A thread-safe registry of long-lived SSE emitters, grouped by topic.
+ *
+ * <p>Registered SSE emitters are removed automatically when they complete, time out or fail, and
+ * when sending an event to them fails. Events can be emitted to all SSE emitters of a topic using
+ * the topic methods of {@link Datastar}, for example {@link Datastar#patchElements(String)}.
+ *
+ * <p>Topics and connections are held in concurrent maps and sets, so registering, removing and
+ * emitting can happen from any thread without external locking.
+ *
+ * <p>When created with a queue capacity, every connection gets a bounded outbound queue drained by
+ * its own virtual writer thread. Emitting then only enqueues the event, and a slow client fills its
+ * own queue according to the {@link OverflowPolicy} instead of stalling the emitting thread.
+ * Optionally, consecutive PatchSignals events that are still queued are merged into one event.
+ *
+ * <p>When created with a replay capacity, the most recent events emitted to each topic are kept in
+ * a ring buffer of encoded frames. A reconnecting client is resumed with {@link #resume(String,
+ * SseEmitter, String)}, which replays only the events emitted after its Last-Event-ID.
+ *
+ * <p>Connections are spread evenly over the slots of a timing wheel, so that {@link
+ * DatastarHeartbeat} can visit one slot at a time instead of keeping a timer per connection.
+ */
+public class DatastarConnections {
+
+  /** The number of slots of the heartbeat wheel */
+  static final int WHEEL_SLOTS = 64;
+
+  private final ConcurrentMap<String, Set<SseEmitter>> topics = new ConcurrentHashMap<>();
+  private final ConcurrentMap<SseEmitter, DatastarConnection> connections =
+      new ConcurrentHashMap<>();
+  private final int queueCapacity;
+  private final OverflowPolicy overflowPolicy;
+  private final int maxOverflows;
+  private final boolean coalesceSignals;
+  private final DatastarMetrics metrics;
+  private final int replayCapacity;
+  private volatile boolean signalsCompared;
+  private final ConcurrentMap<String, ReplayBuffer> replays = new ConcurrentHashMap<>();
+  private final List<Set<SseEmitter>> wheel = new ArrayList<>(WHEEL_SLOTS);
+  private final AtomicInteger nextSlot = new AtomicInteger();
+
+  /** Constructor for connections that are written to directly, without an outbound queue */
+  public DatastarConnections() {
+    this(0, OverflowPolicy.DROP_OLDEST, 0, false, DatastarMetrics.NOOP, 0);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param queueCapacity The capacity of the outbound queue per connection, or 0 to write directly
+   *     to the SSE emitters
+   * @param overflowPolicy What to do when an outbound queue is full
+   * @param maxOverflows The number of overflows after which {@link OverflowPolicy#DISCONNECT}
+   *     disconnects the client
+   * @param coalesceSignals Whether PatchSignals events still waiting in an outbound queue are
+   *     merged with the next PatchSignals event
+   * @param metrics The metrics that the outbound queue writers record their sends in
+   * @param replayCapacity The number of events kept per topic to replay to reconnecting clients,
+   *     or 0 to disable replay
+   */
+  public DatastarConnections(
+      int queueCapacity,
+      OverflowPolicy overflowPolicy,
+      int maxOverflows,
+      boolean coalesceSignals,
+      DatastarMetrics metrics,
+      int replayCapacity) {
+    if (queueCapacity < 0) {
+      throw new IllegalArgumentException("queueCapacity must not be negative");
+    }
+    if (replayCapacity < 0) {
+      throw new IllegalArgumentException("replayCapacity must not be negative");
+    }
+    this.queueCapacity = queueCapacity;
+    this.overflowPolicy = overflowPolicy;
+    this.maxOverflows = maxOverflows;
+    this.coalesceSignals = coalesceSignals;
+    this.metrics = metrics;
+    this.replayCapacity = replayCapacity;
+    for (int i = 0; i < WHEEL_SLOTS; i++) {
+      wheel.add(ConcurrentHashMap.newKeySet());
+    }
+  }
+
+  /**
+   * Create a builder for connections, starting from the defaults of {@link
+   * #DatastarConnections()}
+   *
+   * @return The connections builder
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /** Builder for {@link DatastarConnections} */
+  public static final class Builder {
+
+    private int queueCapacity;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+    private int maxOverflows;
+    private boolean coalesceSignals;
+    private DatastarMetrics metrics = DatastarMetrics.NOOP;
+    private int replayCapacity;
+
+    private Builder() {}
+
+    /**
+     * The capacity of the outbound queue per connection
+     *
+     * @param queueCapacity The capacity, or 0 to write directly to the SSE emitters
+     * @return The builder
+     */
+    public Builder queueCapacity(int queueCapacity) {
+      this.queueCapacity = queueCapacity;
+      return this;
+    }
+
+    /**
+     * What to do when an outbound queue is full
+     *
+     * @param overflowPolicy The overflow policy
+     * @return The builder
+     */
+    public Builder overflowPolicy(OverflowPolicy overflowPolicy) {
+      this.overflowPolicy = overflowPolicy;
+      return this;
+    }
+
+    /**
+     * The number of overflows after which {@link OverflowPolicy#DISCONNECT} disconnects the client
+     *
+     * @param maxOverflows The number of overflows
+     * @return The builder
+     */
+    public Builder maxOverflows(int maxOverflows) {
+      this.maxOverflows = maxOverflows;
+      return this;
+    }
+
+    /**
+     * Whether PatchSignals events still waiting in an outbound queue are merged with the next
+     * PatchSignals event
+     *
+     * @param coalesceSignals True to merge queued PatchSignals events
+     * @return The builder
+     */
+    public Builder coalesceSignals(boolean coalesceSignals) {
+      this.coalesceSignals = coalesceSignals;
+      return this;
+    }
+
+    /**
+     * The metrics that the outbound queue writers record their sends in
+     *
+     * @param metrics The metrics
+     * @return The builder
+     */
+    public Builder metrics(DatastarMetrics metrics) {
+      this.metrics = metrics;
+      return this;
+    }
+
+    /**
+     * The number of events kept per topic to replay to reconnecting clients
+     *
+     * @param replayCapacity The number of events, or 0 to disable replay
+     * @return The builder
+     */
+    public Builder replayCapacity(int replayCapacity) {
+      this.replayCapacity = replayCapacity;
+      return this;
+    }
+
+    /**
+     * Create the connections
+     *
+     * @return The connections
+     */
+    public DatastarConnections build() {
+      return new DatastarConnections(
+          queueCapacity, overflowPolicy, maxOverflows, coalesceSignals, metrics, replayCapacity);
+    }
+  }
+
+  /**
+   * Create an SSE emitter that never times out on the server and register it under a topic.
+   *
+   * @param topic The topic
+   * @return The registered SSE emitter
+   */
+  public SseEmitter connect(String topic) {
+    return register(topic, new SseEmitter(-1L));
+  }
+
+  /**
+   * Register an SSE emitter under a topic. An SSE emitter can be registered under multiple topics.
+   *
+   * @param topic The topic
+   * @param sseEmitter The SSE emitter
+   * @return The registered SSE emitter
+   */
+  public SseEmitter register(String topic, SseEmitter sseEmitter) {
+    if (topic == null || topic.isBlank()) {
+      throw new IllegalArgumentException("topic is null or empty");
+    }
+    if (sseEmitter == null) {
+      throw new IllegalArgumentException("sseEmitter is null");
+    }
+    DatastarConnection connection = connection(sseEmitter);
+    if (connection == null) {
+      OutboundQueue queue = null;
+      if (queueCapacity > 0) {
+        queue =
+            new OutboundQueue(
+                sseEmitter,
+                queueCapacity,
+                overflowPolicy,
+                maxOverflows,
+                coalesceSignals,
+                metrics,
+                error -> failAsync(sseEmitter, error),
+                () -> unregister(sseEmitter));
+      }
+      int slot = Math.floorMod(nextSlot.getAndIncrement(), WHEEL_SLOTS);
+      DatastarConnection created = new DatastarConnection(sseEmitter, queue, slot);
+      connection = connections.putIfAbsent(sseEmitter, created);
+      if (connection == null) {
+        connection = created;
+        wheel.get(slot).add(sseEmitter);
+        if (connections.get(sseEmitter) != created) {
+          // Unregistered concurrently, before it was added to the wheel
+          wheel.get(slot).remove(sseEmitter);
+        }
+        if (queue != null) {
+          queue.start();
+        }
+        sseEmitter.onCompletion(() -> unregister(sseEmitter));
+        sseEmitter.onTimeout(() -> unregister(sseEmitter));
+        sseEmitter.onError(error -> unregister(sseEmitter));
+      }
+    }
+    connection.addTopic(topic);
+    topics.compute(
+        topic,
+        (key, members) -> {
+          Set<SseEmitter> result = members != null ? members : ConcurrentHashMap.newKeySet();
+          result.add(sseEmitter);
+          return result;
+        });
+    if (connections.get(sseEmitter) != connection) {
+      // Unregistered concurrently, after it collected the topics to clean up
+      removeFromTopic(topic, sseEmitter);
+    }
+    return sseEmitter;
+  }
+
+  /**
+   * Register the SSE emitter of a reconnecting client under a topic and replay the events it
+   * missed. The events emitted after the Last-Event-ID are written to the SSE emitter before any
+   * new event of the topic.
+   *
+   * @param topic The topic
+   * @param sseEmitter The SSE emitter
+   * @param lastEventId The Last-Event-ID request header sent by the browser, null on a first
+   *     connect
+   * @return True if the client is up to date, false if the missed events are no longer available
+   *     and the client must be sent the complete state
+   */
+  public boolean resume(String topic, SseEmitter sseEmitter, @Nullable String lastEventId) {
+    if (replayCapacity == 0 || lastEventId == null || lastEventId.isBlank()) {
+      register(topic, sseEmitter);
+      return false;
+    }
+    ReplayBuffer buffer = replays.computeIfAbsent(topic, key -> new ReplayBuffer(replayCapacity));
+    if (queueCapacity > 0) {
+      // Queueing does not block, so the missed events are queued ahead of any new event of the
+      // topic while holding the buffer lock
+      synchronized (buffer) {
+        List<SseFrame> missed = buffer.since(lastEventId);
+        register(topic, sseEmitter);
+        return missed != null && replay(sseEmitter, missed);
+      }
+    }
+    // Writing to the SSE emitter blocks, so the missed events are written without holding the
+    // buffer lock, which would block emitting to the topic. The events emitted meanwhile are
+    // written next, and the SSE emitter is registered once it caught up.
+    String lastId = lastEventId;
+    while (true) {
+      List<SseFrame> missed;
+      synchronized (buffer) {
+        missed = buffer.since(lastId);
+        if (missed == null || missed.isEmpty()) {
+          register(topic, sseEmitter);
+          return missed != null;
+        }
+      }
+      if (!replay(sseEmitter, missed)) {
+        return false;
+      }
+      lastId = Objects.requireNonNull(missed.getLast().id());
+    }
+  }
+
+  /**
+   * Discard the events kept for replay to reconnecting clients of a topic
+   *
+   * @param topic The topic
+   */
+  public void clearReplay(String topic) {
+    replays.remove(topic);
+  }
+
+  /**
+   * Remove an SSE emitter from a single topic. The SSE emitter stays registered under its other
+   * topics.
+   *
+   * @param topic The topic
+   * @param sseEmitter The SSE emitter
+   */
+  public void unsubscribe(String topic, SseEmitter sseEmitter) {
+    DatastarConnection connection = connection(sseEmitter);
+    if (connection != null && connection.removeTopic(topic)) {
+      removeFromTopic(topic, sseEmitter);
+    }
+  }
+
+  /**
+   * Complete an SSE emitter and remove it from all topics. When the connection has an outbound
+   * queue, the SSE emitter is completed after the queued events have been written.
+   *
+   * @param sseEmitter The SSE emitter
+   */
+  public void complete(SseEmitter sseEmitter) {
+    DatastarConnection connection = connection(sseEmitter);
+    if (connection != null && connection.completeWhenDrained()) {
+      return;
+    }
+    unregister(sseEmitter);
+    sseEmitter.complete();
+  }
+
+  /**
+   * Remove an SSE emitter from all topics. Events still waiting in its outbound queue are
+   * discarded.
+   *
+   * @param sseEmitter The SSE emitter
+   */
+  public void unregister(SseEmitter sseEmitter) {
+    DatastarConnection connection = connections.remove(sseEmitter);
+    if (connection == null) {
+      return;
+    }
+    connection.close();
+    wheel.get(connection.slot()).remove(sseEmitter);
+    for (String topic : connection.topics()) {
+      removeFromTopic(topic, sseEmitter);
+    }
+  }
+
+  /**
+   * The SSE emitters currently registered under a topic
+   *
+   * @param topic The topic
+   * @return Immutable snapshot of the SSE emitters, empty if the topic has none
+   */
+  public Set<SseEmitter> emitters(String topic) {
+    Set<SseEmitter> members = topics.get(topic);
+    return members == null ? Set.of() : Set.copyOf(members);
+  }
+
+  /**
+   * The topics with at least one registered SSE emitter
+   *
+   * @return Unmodifiable view of the topics
+   */
+  public Set<String> topics() {
+    return Collections.unmodifiableSet(topics.keySet());
+  }
+
+  /**
+   * The connection for a registered SSE emitter
+   *
+   * @param sseEmitter The SSE emitter
+   * @return The connection, or null if the SSE emitter is not registered
+   */
+  public @Nullable DatastarConnection connection(SseEmitter sseEmitter) {
+    return connections.get(sseEmitter);
+  }
+
+  /**
+   * Whether a PatchSignals frame keeps its signals, because queued PatchSignals frames are merged
+   * or because connections compare the signals with the values last sent to them
+   *
+   * @param onlyChanged Whether the frame only sends the changed signals, which makes every later
+   *     PatchSignals frame keep its signals to keep the values last sent up to date
+   * @return True if the frame keeps its signals
+   */
+  boolean keepsSignals(boolean onlyChanged) {
+    if (onlyChanged) {
+      signalsCompared = true;
+      return true;
+    }
+    return signalsCompared || (coalesceSignals && queueCapacity > 0);
+  }
+
+  /**
+   * All registered connections
+   *
+   * @return Unmodifiable view of the connections
+   */
+  public Collection<DatastarConnection> connections() {
+    return Collections.unmodifiableCollection(connections.values());
+  }
+
+  /**
+   * The number of registered SSE emitters
+   *
+   * @return The number of SSE emitters
+   */
+  public int size() {
+    return connections.size();
+  }
+
+  /**
+   * The SSE emitters kept in one slot of the heartbeat wheel
+   *
+   * @param slot The slot, between 0 and {@link #WHEEL_SLOTS}
+   * @return Unmodifiable view of the SSE emitters in the slot
+   */
+  Set<SseEmitter> wheelSlot(int slot) {
+    return Collections.unmodifiableSet(wheel.get(slot));
+  }
+
+  /**
+   * Keep a frame emitted to a topic for replay and take the SSE emitters to send it to, as one step
+   * so that a resuming client gets the frame either replayed or sent, never both
+   *
+   * @param topic The topic
+   * @param frame The encoded frame
+   * @return Immutable snapshot of the SSE emitters of the topic
+   */
+  Set<SseEmitter> publish(String topic, SseFrame frame) {
+    if (replayCapacity == 0 || frame.id() == null) {
+      return emitters(topic);
+    }
+    ReplayBuffer buffer = replays.computeIfAbsent(topic, key -> new ReplayBuffer(replayCapacity));
+    synchronized (buffer) {
+      buffer.append(frame);
+      return emitters(topic);
+    }
+  }
+
+  /**
+   * Remove an SSE emitter from all topics and complete it with an error
+   *
+   * @param sseEmitter The SSE emitter
+   * @param error The error
+   */
+  void fail(SseEmitter sseEmitter, Throwable error) {
+    unregister(sseEmitter);
+    sseEmitter.completeWithError(error);
+  }
+
+  /**
+   * Remove an SSE emitter from all topics and complete it with an error on a new virtual thread.
+   * Completing an SSE emitter waits for a send in progress, so a thread that must not wait for a
+   * stalled client uses this instead of {@link #fail(SseEmitter, Throwable)}.
+   *
+   * @param sseEmitter The SSE emitter
+   * @param error The error
+   */
+  void failAsync(SseEmitter sseEmitter, Throwable error) {
+    unregister(sseEmitter);
+    Thread.ofVirtual().name("datastar-fail").start(() -> sseEmitter.completeWithError(error));
+  }
+
+  private boolean replay(SseEmitter sseEmitter, List<SseFrame> frames) {
+    DatastarConnection connection = connection(sseEmitter);
+    for (SseFrame frame : frames) {
+      if (connection != null && connection.isQueued()) {
+        if (connection.enqueue(frame) != SendOutcome.QUEUED) {
+          return false;
+        }
+        continue;
+      }
+      try {
+        sseEmitter.send(frame.event());
+      } catch (Exception ex) {
+        fail(sseEmitter, ex);
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void removeFromTopic(String topic, SseEmitter sseEmitter) {
+    topics.computeIfPresent(
+        topic,
+        (key, members) -> {
+          members.remove(sseEmitter);
+          return members.isEmpty() ? null : members;
+        });
+  }
+}
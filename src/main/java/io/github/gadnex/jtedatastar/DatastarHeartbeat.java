@@ -0,0 +1,161 @@
+package io.github.gadnex.jtedatastar;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Sends SSE comment heartbeats to all connections registered with {@link DatastarConnections}, so
+ * that connections of clients that went away are detected and removed without waiting for the next
+ * event.
+ *
+ * <p>A single scheduler thread turns a timing wheel: every tick visits one slot of the wheel and
+ * sends the heartbeat to the connections in that slot through the {@link EventDispatcher}. Every
+ * connection gets one heartbeat per interval and the sends are spread evenly over the interval.
+ * The scheduler thread never writes to an SSE emitter itself: the heartbeat is added to the
+ * outbound queue of queued connections, and is sent to the other connections on a virtual thread
+ * per connection, so a stalled client does not delay the heartbeats of the other clients.
+ * Connections whose send fails are removed by the dispatcher, and connections whose previous
+ * heartbeat is still not sent a whole interval later are removed as well. Connections with events
+ * waiting in their outbound queue are skipped, because the queued events detect a broken
+ * connection as well. Heartbeats are not application events, so they are not recorded in the
+ * {@link DatastarMetrics}.
+ */
+public class DatastarHeartbeat implements AutoCloseable {
+
+  /** The encoded heartbeat, an empty SSE comment */
+  static final SseFrame HEARTBEAT = SseFrame.builder().comment("").build();
+
+  private final DatastarConnections connections;
+  private final EventDispatcher dispatcher;
+  private final Duration interval;
+  private final ScheduledExecutorService scheduler;
+  private final ExecutorService sender;
+  private final Set<SseEmitter> sending = ConcurrentHashMap.newKeySet();
+  private int slot;
+
+  /**
+   * Constructor
+   *
+   * @param connections The registry of the connections to send heartbeats to
+   * @param dispatcher The dispatcher used to send the heartbeats
+   * @param interval The time between two heartbeats of the same connection
+   */
+  public DatastarHeartbeat(
+      DatastarConnections connections, EventDispatcher dispatcher, Duration interval) {
+    if (interval.toMillis() < DatastarConnections.WHEEL_SLOTS) {
+      throw new IllegalArgumentException(
+          "interval must be at least " + DatastarConnections.WHEEL_SLOTS + "ms");
+    }
+    this.connections = connections;
+    this.dispatcher = dispatcher;
+    this.interval = interval;
+    this.scheduler =
+        Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("datastar-heartbeat").daemon().factory());
+    this.sender =
+        Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("datastar-heartbeat-send-", 0).factory());
+  }
+
+  /** Start sending heartbeats */
+  public void start() {
+    long tick = interval.toMillis() / DatastarConnections.WHEEL_SLOTS;
+    scheduler.scheduleAtFixedRate(this::tick, tick, tick, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * The time between two heartbeats of the same connection
+   *
+   * @return The heartbeat interval
+   */
+  public Duration interval() {
+    return interval;
+  }
+
+  /**
+   * Send the heartbeat to the connections in the next slot of the wheel
+   *
+   * @return A future that completes with the outcome per SSE emitter
+   */
+  CompletableFuture<EmitResult> tick() {
+    Set<SseEmitter> queued = new HashSet<>();
+    List<CompletableFuture<EmitResult>> sends = new ArrayList<>();
+    for (SseEmitter sseEmitter : connections.wheelSlot(slot)) {
+      DatastarConnection connection = connections.connection(sseEmitter);
+      if (connection == null || connection.queueDepth() > 0) {
+        continue;
+      }
+      if (connection.isQueued()) {
+        queued.add(sseEmitter);
+      } else if (sending.contains(sseEmitter)) {
+        // Completing the SSE emitter waits for the stalled send, so it happens on another thread
+        connections.failAsync(
+            sseEmitter, new TimeoutException("Heartbeat not sent within " + interval));
+      } else {
+        sends.add(send(sseEmitter));
+      }
+    }
+    slot = (slot + 1) % DatastarConnections.WHEEL_SLOTS;
+    try {
+      sends.add(dispatcher.dispatch(queued, HEARTBEAT));
+    } catch (RuntimeException ex) {
+      // Never let a failure stop the scheduler from sending later heartbeats
+      sends.add(CompletableFuture.failedFuture(ex));
+    }
+    return CompletableFuture.allOf(sends.toArray(CompletableFuture[]::new))
+        .handle(
+            (done, ex) -> {
+              Map<SseEmitter, SendOutcome> outcomes = new HashMap<>();
+              for (CompletableFuture<EmitResult> send : sends) {
+                if (!send.isCompletedExceptionally()) {
+                  outcomes.putAll(send.join().outcomes());
+                }
+              }
+              return new EmitResult(outcomes);
+            });
+  }
+
+  /**
+   * Whether a frame is the heartbeat, which is not recorded in the metrics
+   *
+   * @param frame The frame
+   * @return True if the frame is the heartbeat
+   */
+  static boolean isHeartbeat(SseFrame frame) {
+    return frame == HEARTBEAT;
+  }
+
+  private CompletableFuture<EmitResult> send(SseEmitter sseEmitter) {
+    sending.add(sseEmitter);
+    try {
+      return CompletableFuture.supplyAsync(
+              () -> dispatcher.dispatch(Set.of(sseEmitter), HEARTBEAT), sender)
+          .thenCompose(result -> result)
+          .whenComplete((result, ex) -> sending.remove(sseEmitter));
+    } catch (RejectedExecutionException ex) {
+      sending.remove(sseEmitter);
+      return CompletableFuture.failedFuture(ex);
+    }
+  }
+
+  /** Stop sending heartbeats */
+  @Override
+  public void close() {
+    scheduler.shutdownNow();
+    sender.shutdown();
+  }
+}
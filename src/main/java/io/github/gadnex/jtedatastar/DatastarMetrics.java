@@ -0,0 +1,46 @@
+package io.github.gadnex.jtedatastar;
+
+/**
+ * Receives measurements of rendering, encoding and sending Datastar events.
+ *
+ * <p>Implementations are called on the emitting and sending threads, for every event and every SSE
+ * emitter, so they must be thread-safe and cheap. {@link MicrometerDatastarMetrics} is
+ * auto-configured when a Micrometer MeterRegistry is available, otherwise {@link #NOOP} is used.
+ */
+public interface DatastarMetrics {
+
+  /** Metrics that ignore all measurements */
+  DatastarMetrics NOOP = new DatastarMetrics() {};
+
+  /**
+   * A template has been rendered into a PatchElements event
+   *
+   * @param templateName The template name
+   * @param nanos The time taken to render the template
+   */
+  default void rendered(String templateName, long nanos) {}
+
+  /**
+   * Signals have been serialized into a PatchSignals event
+   *
+   * @param nanos The time taken to serialize the signals
+   */
+  default void serialized(long nanos) {}
+
+  /**
+   * An event has been encoded and is about to be sent to its SSE emitters
+   *
+   * @param eventType The event type, such as datastar-patch-elements
+   * @param bytes The size of the encoded event
+   */
+  default void emitted(String eventType, int bytes) {}
+
+  /**
+   * An event has been sent to a single SSE emitter, or could not be sent
+   *
+   * @param outcome The outcome of the send
+   * @param bytes The size of the encoded event
+   * @param nanos The time the send blocked for, 0 if the event was not written
+   */
+  default void sent(SendOutcome outcome, int bytes, long nanos) {}
+}
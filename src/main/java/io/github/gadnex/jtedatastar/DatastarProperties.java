@@ -0,0 +1,552 @@
+package io.github.gadnex.jtedatastar;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import org.jspecify.annotations.Nullable;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/** Datastar configuration properties */
+@ConfigurationProperties(prefix = "datastar")
+public class DatastarProperties {
+
+  private final FanOut fanOut = new FanOut();
+  private final Connections connections = new Connections();
+  private final RenderCache renderCache = new RenderCache();
+  private final Reactive reactive = new Reactive();
+  private final Heartbeat heartbeat = new Heartbeat();
+  private final Broadcast broadcast = new Broadcast();
+  private final Templates templates = new Templates();
+  private final Messages messages = new Messages();
+
+  /** Default constructor */
+  public DatastarProperties() {}
+
+  /**
+   * Get fan-out properties
+   *
+   * @return Fan-out properties
+   */
+  public FanOut getFanOut() {
+    return fanOut;
+  }
+
+  /**
+   * Get connections properties
+   *
+   * @return Connections properties
+   */
+  public Connections getConnections() {
+    return connections;
+  }
+
+  /**
+   * Get render cache properties
+   *
+   * @return Render cache properties
+   */
+  public RenderCache getRenderCache() {
+    return renderCache;
+  }
+
+  /**
+   * Get reactive properties
+   *
+   * @return Reactive properties
+   */
+  public Reactive getReactive() {
+    return reactive;
+  }
+
+  /**
+   * Get heartbeat properties
+   *
+   * @return Heartbeat properties
+   */
+  public Heartbeat getHeartbeat() {
+    return heartbeat;
+  }
+
+  /**
+   * Get broadcast properties
+   *
+   * @return Broadcast properties
+   */
+  public Broadcast getBroadcast() {
+    return broadcast;
+  }
+
+  /**
+   * Get templates properties
+   *
+   * @return Templates properties
+   */
+  public Templates getTemplates() {
+    return templates;
+  }
+
+  /**
+   * Get messages properties
+   *
+   * @return Messages properties
+   */
+  public Messages getMessages() {
+    return messages;
+  }
+
+  /** Properties for sending one event to many SSE emitters */
+  public static class FanOut {
+
+    private FanOutMode mode = FanOutMode.CALLER_THREAD;
+    private int poolSize = Runtime.getRuntime().availableProcessors();
+    private Duration sendTimeout = Duration.ofSeconds(30);
+
+    /** Default constructor */
+    public FanOut() {}
+
+    /**
+     * Get mode property
+     *
+     * @return Mode property
+     */
+    public FanOutMode getMode() {
+      return mode;
+    }
+
+    /**
+     * Set mode property
+     *
+     * @param mode Mode property
+     */
+    public void setMode(FanOutMode mode) {
+      this.mode = mode;
+    }
+
+    /**
+     * Get pool size property, used by the bounded pool mode
+     *
+     * @return Pool size property
+     */
+    public int getPoolSize() {
+      return poolSize;
+    }
+
+    /**
+     * Set pool size property, used by the bounded pool mode
+     *
+     * @param poolSize Pool size property
+     */
+    public void setPoolSize(int poolSize) {
+      this.poolSize = poolSize;
+    }
+
+    /**
+     * Get send timeout property, applied per SSE emitter when sending concurrently
+     *
+     * @return Send timeout property
+     */
+    public Duration getSendTimeout() {
+      return sendTimeout;
+    }
+
+    /**
+     * Set send timeout property, applied per SSE emitter when sending concurrently
+     *
+     * @param sendTimeout Send timeout property
+     */
+    public void setSendTimeout(Duration sendTimeout) {
+      this.sendTimeout = sendTimeout;
+    }
+  }
+
+  /** Properties for the connections registered with {@link DatastarConnections} */
+  public static class Connections {
+
+    private int queueCapacity = 0;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+    private int maxOverflows = 10;
+    private boolean coalesceSignals = false;
+    private int replayCapacity = 0;
+
+    /** Default constructor */
+    public Connections() {}
+
+    /**
+     * Get queue capacity property. 0 disables the outbound queue.
+     *
+     * @return Queue capacity property
+     */
+    public int getQueueCapacity() {
+      return queueCapacity;
+    }
+
+    /**
+     * Set queue capacity property. 0 disables the outbound queue.
+     *
+     * @param queueCapacity Queue capacity property
+     */
+    public void setQueueCapacity(int queueCapacity) {
+      this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Get overflow policy property
+     *
+     * @return Overflow policy property
+     */
+    public OverflowPolicy getOverflowPolicy() {
+      return overflowPolicy;
+    }
+
+    /**
+     * Set overflow policy property
+     *
+     * @param overflowPolicy Overflow policy property
+     */
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+      this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * Get max overflows property, used by the disconnect overflow policy
+     *
+     * @return Max overflows property
+     */
+    public int getMaxOverflows() {
+      return maxOverflows;
+    }
+
+    /**
+     * Set max overflows property, used by the disconnect overflow policy
+     *
+     * @param maxOverflows Max overflows property
+     */
+    public void setMaxOverflows(int maxOverflows) {
+      this.maxOverflows = maxOverflows;
+    }
+
+    /**
+     * Get coalesce signals property, merging queued PatchSignals events
+     *
+     * @return Coalesce signals property
+     */
+    public boolean isCoalesceSignals() {
+      return coalesceSignals;
+    }
+
+    /**
+     * Set coalesce signals property, merging queued PatchSignals events
+     *
+     * @param coalesceSignals Coalesce signals property
+     */
+    public void setCoalesceSignals(boolean coalesceSignals) {
+      this.coalesceSignals = coalesceSignals;
+    }
+
+    /**
+     * Get replay capacity property, the number of events kept per topic for reconnecting clients
+     *
+     * @return Replay capacity property
+     */
+    public int getReplayCapacity() {
+      return replayCapacity;
+    }
+
+    /**
+     * Set replay capacity property, the number of events kept per topic for reconnecting clients
+     *
+     * @param replayCapacity Replay capacity property
+     */
+    public void setReplayCapacity(int replayCapacity) {
+      this.replayCapacity = replayCapacity;
+    }
+  }
+
+  /** Properties for the cache of rendered PatchElements fragments */
+  public static class RenderCache {
+
+    private int maxEntries = 1000;
+    private Duration timeToLive = Duration.ofMinutes(1);
+
+    /** Default constructor */
+    public RenderCache() {}
+
+    /**
+     * Get max entries property, 0 disables the cache
+     *
+     * @return Max entries property
+     */
+    public int getMaxEntries() {
+      return maxEntries;
+    }
+
+    /**
+     * Set max entries property, 0 disables the cache
+     *
+     * @param maxEntries Max entries property
+     */
+    public void setMaxEntries(int maxEntries) {
+      this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Get time to live property, zero for no expiry
+     *
+     * @return Time to live property
+     */
+    public Duration getTimeToLive() {
+      return timeToLive;
+    }
+
+    /**
+     * Set time to live property, zero for no expiry
+     *
+     * @param timeToLive Time to live property
+     */
+    public void setTimeToLive(Duration timeToLive) {
+      this.timeToLive = timeToLive;
+    }
+  }
+
+  /** Properties for the connections of Spring WebFlux applications */
+  public static class Reactive {
+
+    private int bufferSize = FluxSseEmitter.DEFAULT_BUFFER_SIZE;
+
+    /** Default constructor */
+    public Reactive() {}
+
+    /**
+     * Get buffer size property, the number of events buffered per client
+     *
+     * @return Buffer size property
+     */
+    public int getBufferSize() {
+      return bufferSize;
+    }
+
+    /**
+     * Set buffer size property, the number of events buffered per client
+     *
+     * @param bufferSize Buffer size property
+     */
+    public void setBufferSize(int bufferSize) {
+      this.bufferSize = bufferSize;
+    }
+  }
+
+  /** Properties for the heartbeats sent to idle connections */
+  public static class Heartbeat {
+
+    private @Nullable Duration interval;
+
+    /** Default constructor */
+    public Heartbeat() {}
+
+    /**
+     * Get interval property, the time between two heartbeats of a connection, not set disables
+     * heartbeats
+     *
+     * @return Interval property
+     */
+    public @Nullable Duration getInterval() {
+      return interval;
+    }
+
+    /**
+     * Set interval property, the time between two heartbeats of a connection, not set disables
+     * heartbeats
+     *
+     * @param interval Interval property
+     */
+    public void setInterval(@Nullable Duration interval) {
+      this.interval = interval;
+    }
+  }
+
+  /** Properties for carrying events emitted to a topic to the other nodes of a cluster */
+  public static class Broadcast {
+
+    private @Nullable String multicastGroup;
+    private int multicastPort = 45_600;
+    private @Nullable String secret;
+
+    /** Default constructor */
+    public Broadcast() {}
+
+    /**
+     * Get multicast group property, the UDP multicast group address shared by the nodes, not set
+     * disables the multicast bus
+     *
+     * @return Multicast group property
+     */
+    public @Nullable String getMulticastGroup() {
+      return multicastGroup;
+    }
+
+    /**
+     * Set multicast group property, the UDP multicast group address shared by the nodes, not set
+     * disables the multicast bus
+     *
+     * @param multicastGroup Multicast group property
+     */
+    public void setMulticastGroup(@Nullable String multicastGroup) {
+      this.multicastGroup = multicastGroup;
+    }
+
+    /**
+     * Get multicast port property, the UDP port shared by the nodes
+     *
+     * @return Multicast port property
+     */
+    public int getMulticastPort() {
+      return multicastPort;
+    }
+
+    /**
+     * Set multicast port property, the UDP port shared by the nodes
+     *
+     * @param multicastPort Multicast port property
+     */
+    public void setMulticastPort(int multicastPort) {
+      this.multicastPort = multicastPort;
+    }
+
+    /**
+     * Get secret property, the secret shared by the nodes to sign the multicast datagrams, not set
+     * accepts unsigned datagrams from any host on the network
+     *
+     * @return Secret property
+     */
+    public @Nullable String getSecret() {
+      return secret;
+    }
+
+    /**
+     * Set secret property, the secret shared by the nodes to sign the multicast datagrams, not set
+     * accepts unsigned datagrams from any host on the network
+     *
+     * @param secret Secret property
+     */
+    public void setSecret(@Nullable String secret) {
+      this.secret = secret;
+    }
+  }
+
+  /** Properties for the rendering of JTE templates */
+  public static class Templates {
+
+    private boolean minified = false;
+    private List<String> preload = new ArrayList<>();
+    private int warmUpRenders = 3;
+    private String classDirectory = "jte-classes";
+
+    /** Default constructor */
+    public Templates() {}
+
+    /**
+     * Get minified property, whether the templates are minified so rendered lines are not trimmed
+     *
+     * @return Minified property
+     */
+    public boolean isMinified() {
+      return minified;
+    }
+
+    /**
+     * Set minified property, whether the templates are minified so rendered lines are not trimmed
+     *
+     * @param minified Minified property
+     */
+    public void setMinified(boolean minified) {
+      this.minified = minified;
+    }
+
+    /**
+     * Get preload property, the names of the templates resolved and loaded at startup
+     *
+     * @return Preload property
+     */
+    public List<String> getPreload() {
+      return preload;
+    }
+
+    /**
+     * Set preload property, the names of the templates resolved and loaded at startup
+     *
+     * @param preload Preload property
+     */
+    public void setPreload(List<String> preload) {
+      this.preload = preload;
+    }
+
+    /**
+     * Get warm-up renders property, how often every preloaded template is rendered at startup
+     *
+     * @return Warm-up renders property
+     */
+    public int getWarmUpRenders() {
+      return warmUpRenders;
+    }
+
+    /**
+     * Set warm-up renders property, how often every preloaded template is rendered at startup
+     *
+     * @param warmUpRenders Warm-up renders property
+     */
+    public void setWarmUpRenders(int warmUpRenders) {
+      this.warmUpRenders = warmUpRenders;
+    }
+
+    /**
+     * Get class directory property, the directory the minified templates are compiled into in JTE
+     * development mode
+     *
+     * @return Class directory property
+     */
+    public String getClassDirectory() {
+      return classDirectory;
+    }
+
+    /**
+     * Set class directory property, the directory the minified templates are compiled into in JTE
+     * development mode
+     *
+     * @param classDirectory Class directory property
+     */
+    public void setClassDirectory(String classDirectory) {
+      this.classDirectory = classDirectory;
+    }
+  }
+
+  /** Properties for the messages used to localize templates */
+  public static class Messages {
+
+    private @Nullable Duration cacheDuration;
+
+    /** Default constructor */
+    public Messages() {}
+
+    /**
+     * Get cache duration property, how long looked up messages are kept, zero looks them up on
+     * every render, not set uses spring.messages.cache-duration or keeps them until they are
+     * refreshed
+     *
+     * @return Cache duration property
+     */
+    public @Nullable Duration getCacheDuration() {
+      return cacheDuration;
+    }
+
+    /**
+     * Set cache duration property, how long looked up messages are kept, zero looks them up on
+     * every render, not set uses spring.messages.cache-duration or keeps them until they are
+     * refreshed
+     *
+     * @param cacheDuration Cache duration property
+     */
+    public void setCacheDuration(@Nullable Duration cacheDuration) {
+      this.cacheDuration = cacheDuration;
+    }
+  }
+}
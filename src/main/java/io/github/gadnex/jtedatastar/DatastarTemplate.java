@@ -0,0 +1,128 @@
+package io.github.gadnex.jtedatastar;
+
+import gg.jte.TemplateEngine;
+import gg.jte.output.StringOutput;
+import java.util.Map;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A JTE template that has been resolved and loaded by the template engine, handed out by {@link
+ * Datastar#template(String)}.
+ *
+ * <p>Resolving the template up front makes a missing template fail when the handle is created,
+ * typically at startup, instead of when the first event is emitted. Handles are immutable and can
+ * be kept in a static or instance field and shared by all threads.
+ */
+public final class DatastarTemplate {
+
+  private static final Log logger = LogFactory.getLog(DatastarTemplate.class);
+
+  private final TemplateEngine templateEngine;
+  private final String name;
+  private final String fileName;
+  private final boolean minified;
+
+  /**
+   * Constructor, loading the template
+   *
+   * @param templateEngine The JTE template engine that renders the template
+   * @param name The template name without the template suffix
+   * @param fileName The template name with the template suffix
+   * @param minified Whether the template is minified, so rendered lines are not trimmed
+   */
+  DatastarTemplate(TemplateEngine templateEngine, String name, String fileName, boolean minified) {
+    templateEngine.prepareForRendering(fileName);
+    this.templateEngine = templateEngine;
+    this.name = name;
+    this.fileName = fileName;
+    this.minified = minified;
+  }
+
+  /**
+   * The template name
+   *
+   * @return The template name without the template suffix
+   */
+  public String name() {
+    return name;
+  }
+
+  /**
+   * The name the template engine renders the template by
+   *
+   * @return The template name with the template suffix
+   */
+  String fileName() {
+    return fileName;
+  }
+
+  /**
+   * Render the template without parameters the way PatchElements renders it and discard the
+   * output, so that the classes used by rendering are loaded and compiled before the first request.
+   * A template with required parameters cannot be rendered without them and is only loaded.
+   *
+   * @param renders The number of renders
+   */
+  void warmUp(int renders) {
+    warmUp(renders, Map.of());
+  }
+
+  /**
+   * Render the template with sample parameters the way PatchElements renders it and discard the
+   * output, so that the classes used by rendering are loaded and compiled before the first request
+   *
+   * @param renders The number of renders
+   * @param params Sample values of the template parameters
+   */
+  public void warmUp(int renders, Map<String, Object> params) {
+    if (renders < 0) {
+      throw new IllegalArgumentException("renders must not be negative");
+    }
+    for (int i = 0; i < renders; i++) {
+      var output =
+          new SseDataTemplateOutput(
+              SseFrame.builder(), PatchElements.ELEMENTS_DATALINE_LITERAL, !minified);
+      try {
+        templateEngine.render(fileName, params, output);
+      } catch (RuntimeException ex) {
+        // The template has still been loaded
+        if (logger.isDebugEnabled()) {
+          logger.debug("Skipped warming up template " + name + ": " + ex.getMessage());
+        }
+        return;
+      }
+      output.finish();
+    }
+  }
+
+  /**
+   * Warn when the template is marked as minified but renders indented lines, because the
+   * precompiled templates were not minified by the build and their indentation would be sent to
+   * the clients. A template with required parameters cannot be rendered without them and is not
+   * checked.
+   */
+  void checkMinified() {
+    if (!minified) {
+      return;
+    }
+    var output = new StringOutput();
+    try {
+      templateEngine.render(fileName, Map.of(), output);
+    } catch (RuntimeException ex) {
+      return;
+    }
+    if (HtmlMinifier.isIndented(output.toString())) {
+      logger.warn(
+          "Template "
+              + name
+              + " renders indented lines although datastar.templates.minified is true, minify the"
+              + " templates with HtmlMinifier before they are precompiled");
+    }
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+}
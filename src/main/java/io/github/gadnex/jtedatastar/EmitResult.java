@@ -0,0 +1,70 @@
+package io.github.gadnex.jtedatastar;
+
+import java.util.Collections;
+import java.util.Map;
+import org.jspecify.annotations.Nullable;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/** The outcome of emitting one event, per SSE emitter the event was sent to. */
+public final class EmitResult {
+
+  private final Map<SseEmitter, SendOutcome> outcomes;
+
+  /**
+   * Constructor
+   *
+   * @param outcomes The outcome per SSE emitter
+   */
+  EmitResult(Map<SseEmitter, SendOutcome> outcomes) {
+    this.outcomes = Collections.unmodifiableMap(outcomes);
+  }
+
+  /**
+   * The outcome per SSE emitter
+   *
+   * @return Unmodifiable map of SSE emitter to outcome
+   */
+  public Map<SseEmitter, SendOutcome> outcomes() {
+    return outcomes;
+  }
+
+  /**
+   * The outcome for a single SSE emitter
+   *
+   * @param sseEmitter The SSE emitter
+   * @return The outcome, or null if the event was not sent to the SSE emitter
+   */
+  public @Nullable SendOutcome outcome(SseEmitter sseEmitter) {
+    return outcomes.get(sseEmitter);
+  }
+
+  /**
+   * The number of SSE emitters with the given outcome
+   *
+   * @param outcome The outcome to count
+   * @return The number of SSE emitters
+   */
+  public int count(SendOutcome outcome) {
+    int count = 0;
+    for (SendOutcome value : outcomes.values()) {
+      if (value == outcome) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Whether the event was written to every SSE emitter
+   *
+   * @return True if every outcome is {@link SendOutcome#SENT}
+   */
+  public boolean allSent() {
+    return count(SendOutcome.SENT) == outcomes.size();
+  }
+
+  @Override
+  public String toString() {
+    return "EmitResult" + outcomes.values();
+  }
+}
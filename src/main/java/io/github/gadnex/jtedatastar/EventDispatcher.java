@@ -0,0 +1,356 @@
+package io.github.gadnex.jtedatastar;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.jspecify.annotations.Nullable;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import tools.jackson.databind.JsonNode;
+
+/**
+ * Sends encoded SSE frames to a set of SSE emitters using the configured {@link FanOutMode}.
+ *
+ * <p>With {@link FanOutMode#VIRTUAL_THREADS} or {@link FanOutMode#BOUNDED_POOL} every SSE emitter
+ * is written to concurrently, so a client with a full TCP window does not delay the other clients.
+ * A send that does not finish within the send timeout completes its SSE emitter with an error. The
+ * send timeout cannot be enforced with {@link FanOutMode#CALLER_THREAD}. A send that timed out is
+ * abandoned, not interrupted, so with {@link FanOutMode#BOUNDED_POOL} it keeps holding its pool
+ * thread until the write to the client returns.
+ *
+ * <p>SSE emitters that fail or time out are removed from {@link DatastarConnections}, so they are
+ * not sent to again. Connections with an outbound queue are never written to by the dispatcher,
+ * the frame is only added to their queue. Registered connections that already received the same
+ * content for the target of a PatchElements frame that skips unchanged fragments are skipped, and
+ * a PatchSignals frame that only patches changed signals is reduced per registered connection to
+ * the signals that differ from the values last sent to it.
+ *
+ * <p>With a {@link DatastarBroadcastBus}, frames dispatched to a topic are also published to the
+ * other nodes of the cluster, and frames published by the other nodes are dispatched to the SSE
+ * emitters of their topic on this node.
+ */
+public class EventDispatcher implements AutoCloseable {
+
+  /**
+   * Dispatcher used by emitters created without one, which sends on the calling thread. Shared so
+   * that emitting through those constructors does not create a connections registry per event.
+   */
+  static final EventDispatcher DEFAULT = new EventDispatcher();
+
+  private static final Log logger = LogFactory.getLog(EventDispatcher.class);
+
+  private final @Nullable ExecutorService executor;
+  private final @Nullable Duration sendTimeout;
+  private final DatastarConnections connections;
+  private final DatastarMetrics metrics;
+  private final @Nullable DatastarBroadcastBus bus;
+
+  /** Constructor for a dispatcher that sends on the calling thread */
+  public EventDispatcher() {
+    this(FanOutMode.CALLER_THREAD, 0, null, new DatastarConnections(), DatastarMetrics.NOOP, null);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param fanOutMode The strategy used to send to multiple SSE emitters
+   * @param poolSize The number of threads used by {@link FanOutMode#BOUNDED_POOL}
+   * @param sendTimeout The maximum time a single send may take, or null for no timeout
+   * @param connections The registry that SSE emitters are removed from when a send fails
+   * @param metrics The metrics to record events and sends in
+   * @param bus The bus that carries frames dispatched to a topic to the other nodes, or null for a
+   *     single node
+   */
+  public EventDispatcher(
+      FanOutMode fanOutMode,
+      int poolSize,
+      @Nullable Duration sendTimeout,
+      DatastarConnections connections,
+      DatastarMetrics metrics,
+      @Nullable DatastarBroadcastBus bus) {
+    this.executor =
+        switch (fanOutMode) {
+          case CALLER_THREAD -> null;
+          case VIRTUAL_THREADS ->
+              Executors.newThreadPerTaskExecutor(
+                  Thread.ofVirtual().name("datastar-send-", 0).factory());
+          case BOUNDED_POOL -> {
+            if (poolSize < 1) {
+              throw new IllegalArgumentException("poolSize must be at least 1");
+            }
+            yield Executors.newFixedThreadPool(
+                poolSize, Thread.ofPlatform().name("datastar-send-", 0).daemon().factory());
+          }
+        };
+    this.sendTimeout = sendTimeout;
+    this.connections = connections;
+    this.metrics = metrics;
+    this.bus = bus;
+    if (bus != null) {
+      bus.subscribe((topic, frame) -> dispatch(connections.publish(topic, frame), frame));
+    }
+  }
+
+  /**
+   * Create a builder for a dispatcher, starting from the defaults of {@link #EventDispatcher()}
+   *
+   * @return The dispatcher builder
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /** Builder for {@link EventDispatcher} */
+  public static final class Builder {
+
+    private FanOutMode fanOutMode = FanOutMode.CALLER_THREAD;
+    private int poolSize;
+    private @Nullable Duration sendTimeout;
+    private @Nullable DatastarConnections connections;
+    private DatastarMetrics metrics = DatastarMetrics.NOOP;
+    private @Nullable DatastarBroadcastBus bus;
+
+    private Builder() {}
+
+    /**
+     * The strategy used to send to multiple SSE emitters
+     *
+     * @param fanOutMode The fan-out mode
+     * @return The builder
+     */
+    public Builder fanOutMode(FanOutMode fanOutMode) {
+      this.fanOutMode = fanOutMode;
+      return this;
+    }
+
+    /**
+     * The number of threads used by {@link FanOutMode#BOUNDED_POOL}
+     *
+     * @param poolSize The number of threads
+     * @return The builder
+     */
+    public Builder poolSize(int poolSize) {
+      this.poolSize = poolSize;
+      return this;
+    }
+
+    /**
+     * The maximum time a single send may take
+     *
+     * @param sendTimeout The send timeout, or null for no timeout
+     * @return The builder
+     */
+    public Builder sendTimeout(@Nullable Duration sendTimeout) {
+      this.sendTimeout = sendTimeout;
+      return this;
+    }
+
+    /**
+     * The registry that SSE emitters are removed from when a send fails
+     *
+     * @param connections The connections
+     * @return The builder
+     */
+    public Builder connections(DatastarConnections connections) {
+      this.connections = connections;
+      return this;
+    }
+
+    /**
+     * The metrics to record events and sends in
+     *
+     * @param metrics The metrics
+     * @return The builder
+     */
+    public Builder metrics(DatastarMetrics metrics) {
+      this.metrics = metrics;
+      return this;
+    }
+
+    /**
+     * The bus that carries frames dispatched to a topic to the other nodes
+     *
+     * @param bus The broadcast bus, or null for a single node
+     * @return The builder
+     */
+    public Builder bus(@Nullable DatastarBroadcastBus bus) {
+      this.bus = bus;
+      return this;
+    }
+
+    /**
+     * Create the dispatcher, with its own connections if none were set
+     *
+     * @return The dispatcher
+     */
+    public EventDispatcher build() {
+      return new EventDispatcher(
+          fanOutMode,
+          poolSize,
+          sendTimeout,
+          connections != null ? connections : new DatastarConnections(),
+          metrics,
+          bus);
+    }
+  }
+
+  /**
+   * The metrics that events and sends are recorded in
+   *
+   * @return The metrics
+   */
+  public DatastarMetrics metrics() {
+    return metrics;
+  }
+
+  /**
+   * Whether a PatchSignals frame keeps its signals for the registered connections
+   *
+   * @param onlyChanged Whether the frame only sends the changed signals
+   * @return True if the frame keeps its signals
+   */
+  boolean keepsSignals(boolean onlyChanged) {
+    return connections.keepsSignals(onlyChanged);
+  }
+
+  /**
+   * Send a frame to all SSE emitters
+   *
+   * @param sseEmitters The SSE emitters to send the frame to
+   * @param frame The encoded frame
+   * @return A future that completes with the outcome per SSE emitter once all sends have finished
+   */
+  public CompletableFuture<EmitResult> dispatch(Set<SseEmitter> sseEmitters, SseFrame frame) {
+    Map<SseEmitter, SendOutcome> outcomes = HashMap.newHashMap(sseEmitters.size());
+    Map<SseEmitter, CompletableFuture<SendOutcome>> sends = new HashMap<>();
+    String name = frame.name();
+    if (name != null) {
+      metrics.emitted(name, frame.size());
+    }
+    Map<JsonNode, SseFrame> deltas = frame.signals() == null ? Map.of() : new HashMap<>();
+    for (SseEmitter sseEmitter : sseEmitters) {
+      DatastarConnection connection = connections.connection(sseEmitter);
+      if (connection != null && frame.untracked()) {
+        connection.forget();
+      }
+      SseFrame toSend = connection == null ? frame : connection.signalsFrame(frame, deltas);
+      if (toSend == null || (connection != null && connection.unchanged(frame))) {
+        sent(SendOutcome.SKIPPED, frame, 0);
+        outcomes.put(sseEmitter, SendOutcome.SKIPPED);
+      } else if (connection != null && connection.isQueued()) {
+        SendOutcome outcome = connection.enqueue(toSend);
+        sent(outcome, toSend, 0);
+        outcomes.put(sseEmitter, outcome);
+      } else if (executor == null) {
+        outcomes.put(sseEmitter, send(sseEmitter, toSend, null));
+      } else {
+        sends.put(sseEmitter, sendAsync(executor, sseEmitter, toSend));
+      }
+    }
+    if (sends.isEmpty()) {
+      return CompletableFuture.completedFuture(new EmitResult(outcomes));
+    }
+    return CompletableFuture.allOf(sends.values().toArray(CompletableFuture[]::new))
+        .thenApply(
+            done -> {
+              sends.forEach((sseEmitter, send) -> outcomes.put(sseEmitter, send.join()));
+              return new EmitResult(outcomes);
+            });
+  }
+
+  /**
+   * Send a frame to the SSE emitters registered under a topic, keeping it for replay to clients
+   * that reconnect. With a broadcast bus the frame is also published to the other nodes. A frame
+   * that cannot be published is logged, the outcome of the local sends is still returned.
+   *
+   * @param topic The topic registered with {@link DatastarConnections}
+   * @param frame The encoded frame
+   * @return A future that completes with the outcome per SSE emitter of this node once all sends
+   *     have finished
+   */
+  public CompletableFuture<EmitResult> dispatch(String topic, SseFrame frame) {
+    CompletableFuture<EmitResult> result = dispatch(connections.publish(topic, frame), frame);
+    if (bus != null) {
+      try {
+        bus.publish(topic, frame);
+      } catch (RuntimeException ex) {
+        // The frame was already sent to the SSE emitters of this node
+        logger.warn("Failed to publish a frame to topic " + topic + " to the other nodes", ex);
+      }
+    }
+    return result;
+  }
+
+  private CompletableFuture<SendOutcome> sendAsync(
+      ExecutorService executor, SseEmitter sseEmitter, SseFrame frame) {
+    // A send that timed out is abandoned but still finishes, its outcome is recorded only once
+    AtomicBoolean recorded = new AtomicBoolean();
+    CompletableFuture<SendOutcome> send;
+    try {
+      send = CompletableFuture.supplyAsync(() -> send(sseEmitter, frame, recorded), executor);
+    } catch (RejectedExecutionException ex) {
+      connections.fail(sseEmitter, ex);
+      sent(SendOutcome.FAILED, frame, 0);
+      return CompletableFuture.completedFuture(SendOutcome.FAILED);
+    }
+    Duration timeout = sendTimeout;
+    if (timeout == null) {
+      return send;
+    }
+    // Runs on the shared CompletableFuture delayer thread, which must not wait for the stuck send
+    return send.orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS)
+        .exceptionally(
+            ex -> {
+              connections.failAsync(sseEmitter, ex);
+              SendOutcome outcome =
+                  ex instanceof TimeoutException ? SendOutcome.TIMED_OUT : SendOutcome.FAILED;
+              long nanos = outcome == SendOutcome.TIMED_OUT ? timeout.toNanos() : 0;
+              record(recorded, outcome, frame, nanos);
+              return outcome;
+            });
+  }
+
+  private SendOutcome send(
+      SseEmitter sseEmitter, SseFrame frame, @Nullable AtomicBoolean recorded) {
+    long start = System.nanoTime();
+    try {
+      sseEmitter.send(frame.event());
+      record(recorded, SendOutcome.SENT, frame, System.nanoTime() - start);
+      return SendOutcome.SENT;
+    } catch (Exception ex) {
+      connections.fail(sseEmitter, ex);
+      record(recorded, SendOutcome.FAILED, frame, System.nanoTime() - start);
+      return SendOutcome.FAILED;
+    }
+  }
+
+  private void record(
+      @Nullable AtomicBoolean recorded, SendOutcome outcome, SseFrame frame, long nanos) {
+    if (recorded == null || recorded.compareAndSet(false, true)) {
+      sent(outcome, frame, nanos);
+    }
+  }
+
+  private void sent(SendOutcome outcome, SseFrame frame, long nanos) {
+    if (!DatastarHeartbeat.isHeartbeat(frame)) {
+      metrics.sent(outcome, frame.size(), nanos);
+    }
+  }
+
+  /** Stop the threads used for concurrent sends */
+  @Override
+  public void close() {
+    if (executor != null) {
+      executor.shutdown();
+    }
+  }
+}
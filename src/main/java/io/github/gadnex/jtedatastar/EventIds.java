@@ -0,0 +1,27 @@
+package io.github.gadnex.jtedatastar;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates the ids of Datastar events.
+ *
+ * <p>Ids are a per-process epoch followed by a sequence number, so they are cheap to create, unique
+ * and increasing in the order the events were created. The epoch makes sure an id sent by an
+ * earlier run of the application never matches an event of the current run.
+ */
+final class EventIds {
+
+  private static final String EPOCH = Long.toString(System.currentTimeMillis(), 36) + "-";
+  private static final AtomicLong SEQUENCE = new AtomicLong();
+
+  private EventIds() {}
+
+  /**
+   * Create the next event id
+   *
+   * @return The event id
+   */
+  static String next() {
+    return EPOCH + SEQUENCE.incrementAndGet();
+  }
+}
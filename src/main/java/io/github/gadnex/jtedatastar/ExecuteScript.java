@@ -1,6 +1,7 @@
 package io.github.gadnex.jtedatastar;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import org.jspecify.annotations.Nullable;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
@@ -25,7 +26,17 @@ public class ExecuteScript extends AbstractDatastarEmitter {
    * @param sseEmitters The set of SSE emitters to which to emit the events
    */
   public ExecuteScript(Set<SseEmitter> sseEmitters) {
-    super(sseEmitters);
+    this(sseEmitters, EventDispatcher.DEFAULT);
+  }
+
+  /**
+   * Constructor for creating the ExecuteScript emitter
+   *
+   * @param sseEmitters The set of SSE emitters to which to emit the events
+   * @param dispatcher The dispatcher used to send the event to the SSE emitters
+   */
+  public ExecuteScript(Set<SseEmitter> sseEmitters, EventDispatcher dispatcher) {
+    super(sseEmitters, dispatcher);
     scripts = new ArrayList<>();
   }
 
@@ -76,8 +87,23 @@ public class ExecuteScript extends AbstractDatastarEmitter {
     return this;
   }
 
-  /** Emit the SSE event */
+  /** Emit the SSE event and wait until it has been sent to all SSE emitters */
   public void emit() {
+    emitAsync().join();
+  }
+
+  /**
+   * Emit the SSE event without waiting for the sends to finish
+   *
+   * @return A future that completes with the outcome per SSE emitter
+   */
+  public CompletableFuture<EmitResult> emitAsync() {
+    encode();
+    return emitEvents();
+  }
+
+  /** Write the lines of the ExecuteScript event into the frame, without emitting it */
+  void encode() {
     if (scripts.isEmpty()) {
       throw new IllegalStateException("No scripts specified");
     }
@@ -97,6 +123,5 @@ public class ExecuteScript extends AbstractDatastarEmitter {
       event.data(ELEMENTS_DATALINE_LITERAL + script);
     }
     event.data(ELEMENTS_DATALINE_LITERAL + "</script>");
-    emitEvents();
   }
 }
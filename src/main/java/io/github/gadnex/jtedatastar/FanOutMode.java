@@ -0,0 +1,11 @@
+package io.github.gadnex.jtedatastar;
+
+/** The strategy used to send one event to all of its SSE emitters. */
+public enum FanOutMode {
+  /** Send to each SSE emitter in turn on the thread that emits the event. This is the default. */
+  CALLER_THREAD,
+  /** Send to all SSE emitters concurrently, using one virtual thread per send. */
+  VIRTUAL_THREADS,
+  /** Send to all SSE emitters concurrently, using a bounded pool of platform threads. */
+  BOUNDED_POOL
+}
@@ -0,0 +1,121 @@
+package io.github.gadnex.jtedatastar;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.util.concurrent.Queues;
+
+/**
+ * An SSE emitter for Spring WebFlux that publishes the encoded events as a {@link Flux} of data
+ * buffers instead of writing to a servlet response.
+ *
+ * <p>It can be used everywhere an {@link SseEmitter} is accepted, such as {@link Datastar} and
+ * {@link DatastarConnections}, while the connection is held by the reactive server without a
+ * servlet async context. Return {@link #flux()} from a WebFlux controller method that produces
+ * {@code text/event-stream}. The already encoded frame is wrapped without copying, so every
+ * connection shares the same bytes.
+ *
+ * <p>Events are buffered until the client requests them, up to the buffer size. A client that
+ * falls further behind makes the send fail, which removes it from {@link DatastarConnections}.
+ */
+public class FluxSseEmitter extends SseEmitter {
+
+  /** Default number of events buffered for a client that has not read them yet */
+  public static final int DEFAULT_BUFFER_SIZE = 256;
+
+  private final Sinks.Many<DataBuffer> sink;
+  private final List<Runnable> completionCallbacks = new CopyOnWriteArrayList<>();
+  private final List<Consumer<Throwable>> errorCallbacks = new CopyOnWriteArrayList<>();
+  private final AtomicBoolean completed = new AtomicBoolean();
+
+  /** Constructor with the default buffer size */
+  public FluxSseEmitter() {
+    this(DEFAULT_BUFFER_SIZE);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param bufferSize The number of events buffered for a client that has not read them yet
+   */
+  public FluxSseEmitter(int bufferSize) {
+    super(-1L);
+    if (bufferSize < 1) {
+      throw new IllegalArgumentException("bufferSize must be at least 1");
+    }
+    this.sink =
+        Sinks.many().unicast().onBackpressureBuffer(Queues.<DataBuffer>get(bufferSize).get());
+  }
+
+  /**
+   * The events sent to this SSE emitter, to return from a WebFlux controller method. Can only be
+   * subscribed to once.
+   *
+   * @return The encoded events
+   */
+  public Flux<DataBuffer> flux() {
+    return sink.asFlux().doOnCancel(this::completed);
+  }
+
+  @Override
+  public synchronized void send(SseEmitter.SseEventBuilder eventBuilder) throws IOException {
+    for (ResponseBodyEmitter.DataWithMediaType data : eventBuilder.build()) {
+      byte[] bytes =
+          data.getData() instanceof byte[] encoded
+              ? encoded
+              : data.getData().toString().getBytes(StandardCharsets.UTF_8);
+      Sinks.EmitResult result =
+          sink.tryEmitNext(DefaultDataBufferFactory.sharedInstance.wrap(bytes));
+      if (result.isFailure()) {
+        throw new IOException("Cannot send to the SSE emitter: " + result);
+      }
+    }
+  }
+
+  @Override
+  public synchronized void complete() {
+    sink.tryEmitComplete();
+    completed();
+  }
+
+  @Override
+  public synchronized void completeWithError(Throwable ex) {
+    sink.tryEmitError(ex);
+    for (Consumer<Throwable> callback : errorCallbacks) {
+      callback.accept(ex);
+    }
+    completed();
+  }
+
+  @Override
+  public void onTimeout(Runnable callback) {
+    // The reactive connection does not time out on the server
+  }
+
+  @Override
+  public void onError(Consumer<Throwable> callback) {
+    errorCallbacks.add(callback);
+  }
+
+  @Override
+  public void onCompletion(Runnable callback) {
+    completionCallbacks.add(callback);
+  }
+
+  private void completed() {
+    if (completed.compareAndSet(false, true)) {
+      for (Runnable callback : completionCallbacks) {
+        callback.run();
+      }
+    }
+  }
+}
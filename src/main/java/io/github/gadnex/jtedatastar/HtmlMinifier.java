@@ -0,0 +1,179 @@
+package io.github.gadnex.jtedatastar;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Removes insignificant whitespace from HTML templates once, before they are compiled, instead of
+ * trimming every rendered line on every emit.
+ *
+ * <p>Every run of whitespace that contains a line break is replaced by a single line break, which
+ * removes indentation, trailing whitespace and blank lines without changing how the HTML is
+ * rendered. Whitespace within a line is kept, so attribute values and template expressions are
+ * left intact. The content of {@code <pre>}, {@code <textarea>} and {@code <script>} elements is
+ * never changed.
+ *
+ * <p>The {@link #main(String[])} method minifies a directory of templates into another directory,
+ * so that it can run as a build step before the templates are precompiled.
+ */
+public final class HtmlMinifier {
+
+  private static final List<String> PRESERVED_ELEMENTS = List.of("pre", "textarea", "script");
+  private static final List<String> TEMPLATE_EXTENSIONS = List.of(".jte", ".kte");
+
+  private HtmlMinifier() {}
+
+  /**
+   * Minify HTML or template source
+   *
+   * @param html The HTML or template source
+   * @return The minified source
+   */
+  public static String minify(String html) {
+    StringBuilder result = new StringBuilder(html.length());
+    int length = html.length();
+    int i = 0;
+    while (i < length) {
+      char c = html.charAt(i);
+      if (c == '<') {
+        int end = preservedElementEnd(html, i);
+        result.append(html, i, end);
+        i = end;
+      } else if (Character.isWhitespace(c)) {
+        int start = i;
+        boolean lineBreak = false;
+        while (i < length && Character.isWhitespace(html.charAt(i))) {
+          lineBreak |= html.charAt(i) == '\n' || html.charAt(i) == '\r';
+          i++;
+        }
+        if (!lineBreak) {
+          result.append(html, start, i);
+        } else if (!result.isEmpty() && i < length) {
+          result.append('\n');
+        }
+      } else {
+        result.append(c);
+        i++;
+      }
+    }
+    return result.toString();
+  }
+
+  /**
+   * Minify all templates in a directory into another directory, keeping the directory structure.
+   * Other files are copied unchanged.
+   *
+   * @param args The source directory and the target directory
+   */
+  public static void main(String[] args) {
+    if (args.length != 2) {
+      throw new IllegalArgumentException(
+          "Usage: HtmlMinifier <source directory> <target directory>");
+    }
+    minify(Path.of(args[0]), Path.of(args[1]));
+  }
+
+  /**
+   * Minify all templates in a directory into another directory, keeping the directory structure.
+   * Other files are copied unchanged.
+   *
+   * @param source The source directory
+   * @param target The target directory
+   */
+  public static void minify(Path source, Path target) {
+    try (Stream<Path> files = Files.walk(source)) {
+      for (Path file : files.filter(Files::isRegularFile).toList()) {
+        Path copy = target.resolve(source.relativize(file).toString());
+        Files.createDirectories(copy.getParent());
+        if (isTemplate(file.getFileName().toString())) {
+          String template = Files.readString(file, StandardCharsets.UTF_8);
+          Files.writeString(copy, minify(template), StandardCharsets.UTF_8);
+        } else {
+          Files.copy(file, copy, StandardCopyOption.REPLACE_EXISTING);
+        }
+      }
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+  }
+
+  /**
+   * Whether HTML has a line indented with whitespace outside the preserved elements, which a
+   * minified template never renders
+   *
+   * @param html The rendered HTML
+   * @return True if a line is indented
+   */
+  static boolean isIndented(String html) {
+    int length = html.length();
+    int i = 0;
+    while (i < length) {
+      char c = html.charAt(i);
+      if (c == '<') {
+        i = preservedElementEnd(html, i);
+      } else if (c == '\n') {
+        int start = ++i;
+        while (i < length && (html.charAt(i) == ' ' || html.charAt(i) == '\t')) {
+          i++;
+        }
+        if (i > start && i < length && !Character.isWhitespace(html.charAt(i))) {
+          return true;
+        }
+      } else {
+        i++;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Whether a file or template name is a JTE template
+   *
+   * @param name The file or template name
+   * @return True for .jte and .kte templates
+   */
+  static boolean isTemplate(String name) {
+    return TEMPLATE_EXTENSIONS.stream().anyMatch(name::endsWith);
+  }
+
+  private static int preservedElementEnd(String html, int start) {
+    for (String element : PRESERVED_ELEMENTS) {
+      if (isTag(html, start + 1, element)) {
+        int close = indexOfIgnoreCase(html, "</" + element, start);
+        if (close == -1) {
+          return html.length();
+        }
+        int end = html.indexOf('>', close);
+        return end == -1 ? html.length() : end + 1;
+      }
+    }
+    return start + 1;
+  }
+
+  private static int indexOfIgnoreCase(String html, String search, int start) {
+    for (int i = start; i <= html.length() - search.length(); i++) {
+      if (html.regionMatches(true, i, search, 0, search.length())) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static boolean isTag(String html, int nameStart, String element) {
+    int nameEnd = nameStart + element.length();
+    if (!html.regionMatches(true, nameStart, element, 0, element.length())) {
+      return false;
+    }
+    if (nameEnd == html.length()) {
+      return true;
+    }
+    char next = html.charAt(nameEnd);
+    return next == '>' || next == '/' || Character.isWhitespace(next);
+  }
+}
@@ -0,0 +1,55 @@
+package io.github.gadnex.jtedatastar;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * A {@link DatastarBroadcastBus} that connects nodes running in the same JVM, such as several
+ * application contexts in a test. The frames are handed to the other nodes on the publishing
+ * thread, without copying them.
+ */
+public final class InProcessBroadcastBus implements DatastarBroadcastBus {
+
+  private final List<InProcessBroadcastBus> nodes;
+  private volatile @Nullable Listener listener;
+
+  /** Constructor for the first node of a new in-process cluster */
+  public InProcessBroadcastBus() {
+    this(new CopyOnWriteArrayList<>());
+  }
+
+  private InProcessBroadcastBus(List<InProcessBroadcastBus> nodes) {
+    this.nodes = nodes;
+    nodes.add(this);
+  }
+
+  /**
+   * Create the bus of another node of the same in-process cluster
+   *
+   * @return The bus of the new node
+   */
+  public InProcessBroadcastBus join() {
+    return new InProcessBroadcastBus(nodes);
+  }
+
+  @Override
+  public void publish(String topic, SseFrame frame) {
+    for (InProcessBroadcastBus node : nodes) {
+      Listener nodeListener = node.listener;
+      if (node != this && nodeListener != null) {
+        nodeListener.received(topic, frame);
+      }
+    }
+  }
+
+  @Override
+  public void subscribe(Listener listener) {
+    this.listener = listener;
+  }
+
+  @Override
+  public void close() {
+    nodes.remove(this);
+  }
+}
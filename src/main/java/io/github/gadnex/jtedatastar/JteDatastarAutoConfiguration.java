@@ -1,14 +1,33 @@
 package io.github.gadnex.jtedatastar;
 
+import gg.jte.CodeResolver;
+import gg.jte.ContentType;
 import gg.jte.TemplateEngine;
+import gg.jte.resolve.DirectoryCodeResolver;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Path;
+import java.time.Duration;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.MessageSource;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import reactor.core.publisher.Flux;
+import tools.jackson.databind.json.JsonMapper;
 
 /** Spring Boot AutoConfiguration class */
-@AutoConfiguration
+@AutoConfiguration(beforeName = "gg.jte.springframework.boot.autoconfigure.JteAutoConfiguration")
+@EnableConfigurationProperties(DatastarProperties.class)
 public class JteDatastarAutoConfiguration {
 
   private final TemplateEngine templateEngine;
@@ -31,14 +50,250 @@ public class JteDatastarAutoConfiguration {
     this.messageSource = messageSource;
   }
 
+  /**
+   * The registry of long-lived SSE emitters grouped by topic
+   *
+   * @param properties The Datastar configuration properties
+   * @param metrics The metrics, if Micrometer is available
+   * @return The connections bean
+   */
+  @Bean
+  @ConditionalOnMissingBean
+  public DatastarConnections datastarConnections(
+      DatastarProperties properties, ObjectProvider<DatastarMetrics> metrics) {
+    DatastarProperties.Connections connections = properties.getConnections();
+    return DatastarConnections.builder()
+        .queueCapacity(connections.getQueueCapacity())
+        .overflowPolicy(connections.getOverflowPolicy())
+        .maxOverflows(connections.getMaxOverflows())
+        .coalesceSignals(connections.isCoalesceSignals())
+        .metrics(metrics.getIfAvailable(() -> DatastarMetrics.NOOP))
+        .replayCapacity(connections.getReplayCapacity())
+        .build();
+  }
+
+  /**
+   * The dispatcher used to send Datastar events to SSE emitters
+   *
+   * @param properties The Datastar configuration properties
+   * @param connections The registry that failed SSE emitters are removed from
+   * @param metrics The metrics, if Micrometer is available
+   * @param bus The bus to the other nodes of the cluster, if there is one
+   * @return The event dispatcher bean
+   */
+  @Bean
+  @ConditionalOnMissingBean
+  public EventDispatcher datastarEventDispatcher(
+      DatastarProperties properties,
+      DatastarConnections connections,
+      ObjectProvider<DatastarMetrics> metrics,
+      ObjectProvider<DatastarBroadcastBus> bus) {
+    DatastarProperties.FanOut fanOut = properties.getFanOut();
+    return EventDispatcher.builder()
+        .fanOutMode(fanOut.getMode())
+        .poolSize(fanOut.getPoolSize())
+        .sendTimeout(fanOut.getSendTimeout())
+        .connections(connections)
+        .metrics(metrics.getIfAvailable(() -> DatastarMetrics.NOOP))
+        .bus(bus.getIfUnique())
+        .build();
+  }
+
+  /**
+   * The UDP multicast bus that carries events emitted to a topic to the other nodes
+   *
+   * @param properties The Datastar configuration properties
+   * @return The broadcast bus bean
+   * @throws UnknownHostException If the multicast group address cannot be resolved
+   */
+  @Bean
+  @ConditionalOnMissingBean
+  @ConditionalOnProperty(prefix = "datastar.broadcast", name = "multicast-group")
+  public DatastarBroadcastBus datastarBroadcastBus(DatastarProperties properties)
+      throws UnknownHostException {
+    DatastarProperties.Broadcast broadcast = properties.getBroadcast();
+    String group = broadcast.getMulticastGroup();
+    if (group == null) {
+      throw new IllegalStateException("datastar.broadcast.multicast-group is not set");
+    }
+    return new MulticastBroadcastBus(
+        InetAddress.getByName(group), broadcast.getMulticastPort(), null, broadcast.getSecret());
+  }
+
+  /**
+   * The heartbeat sent to all registered connections, to remove connections of clients that went
+   * away
+   *
+   * @param properties The Datastar configuration properties
+   * @param connections The registry of the connections to send heartbeats to
+   * @param eventDispatcher The dispatcher used to send the heartbeats
+   * @return The heartbeat bean
+   */
+  @Bean
+  @ConditionalOnMissingBean
+  @ConditionalOnProperty(prefix = "datastar.heartbeat", name = "interval")
+  public DatastarHeartbeat datastarHeartbeat(
+      DatastarProperties properties,
+      DatastarConnections connections,
+      EventDispatcher eventDispatcher) {
+    Duration interval = properties.getHeartbeat().getInterval();
+    if (interval == null) {
+      throw new IllegalStateException("datastar.heartbeat.interval is not set");
+    }
+    DatastarHeartbeat heartbeat = new DatastarHeartbeat(connections, eventDispatcher, interval);
+    heartbeat.start();
+    return heartbeat;
+  }
+
+  /**
+   * The cache of rendered fragments used by PatchElements that opt in to caching
+   *
+   * @param properties The Datastar configuration properties
+   * @return The render cache bean
+   */
+  @Bean
+  @ConditionalOnMissingBean
+  public RenderCache datastarRenderCache(DatastarProperties properties) {
+    DatastarProperties.RenderCache renderCache = properties.getRenderCache();
+    return new RenderCache(renderCache.getMaxEntries(), renderCache.getTimeToLive());
+  }
+
   /**
    * A Datastar Spring Bean that is used to easily construct Datastar SSE event emitters
    *
-   * @return The Datastar bean
+   * @param properties The Datastar configuration properties
+   * @param eventDispatcher The dispatcher used to send events to SSE emitters
+   * @param connections The registry of SSE emitters grouped by topic
+   * @param jsonMapper The application JSON mapper, used to serialize signals when there is one
+   * @param renderCache The cache of rendered fragments
+   * @param environment The environment, used to keep looked up messages as long as the
+   *     MessageSource caches them
+   * @return The Datastar bean, with the configured templates preloaded
    */
   @Bean
   @ConditionalOnMissingBean
-  public Datastar dataStar() {
-    return new Datastar(templateEngine, templateSuffix, messageSource);
+  public Datastar dataStar(
+      DatastarProperties properties,
+      EventDispatcher eventDispatcher,
+      DatastarConnections connections,
+      ObjectProvider<JsonMapper> jsonMapper,
+      RenderCache renderCache,
+      Environment environment) {
+    DatastarProperties.Templates templates = properties.getTemplates();
+    Duration cacheDuration = properties.getMessages().getCacheDuration();
+    if (cacheDuration == null) {
+      cacheDuration = environment.getProperty("spring.messages.cache-duration", Duration.class);
+    }
+    Datastar datastar =
+        Datastar.builder(
+                templateEngine,
+                templateSuffix,
+                new CachingMessageSource(messageSource, cacheDuration))
+            .dispatcher(eventDispatcher)
+            .connections(connections)
+            .jsonMapper(jsonMapper.getIfUnique(JsonMapper::new))
+            .renderCache(renderCache)
+            .minifiedTemplates(templates.isMinified())
+            .build();
+    // Load the templates before the first request, so a missing template fails the startup
+    datastar.preload(templates.getPreload(), templates.getWarmUpRenders());
+    return datastar;
+  }
+
+  /**
+   * A template engine that minifies the templates it compiles at runtime, configured when the
+   * templates are minified and JTE runs in development mode. Precompiled templates are minified as
+   * a build step instead.
+   */
+  @Configuration(proxyBeanMethods = false)
+  @ConditionalOnProperty(
+      name = {"datastar.templates.minified", "gg.jte.development-mode"},
+      havingValue = "true")
+  static class MinifiedTemplatesConfiguration {
+
+    /**
+     * Creates the template engine in place of the one of the JTE starter, loading the templates
+     * from the JTE template location through a {@link MinifyingCodeResolver} and compiling them
+     * into the configured class directory
+     *
+     * @param templateLocation The directory the templates are loaded from
+     * @param properties The Datastar configuration properties
+     * @return The template engine bean
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    TemplateEngine datastarTemplateEngine(
+        @Value("${gg.jte.template-location:src/main/jte}") String templateLocation,
+        DatastarProperties properties) {
+      CodeResolver codeResolver =
+          new MinifyingCodeResolver(new DirectoryCodeResolver(Path.of(templateLocation)));
+      TemplateEngine templateEngine =
+          TemplateEngine.create(
+              codeResolver,
+              Path.of(properties.getTemplates().getClassDirectory()),
+              ContentType.Html,
+              MinifiedTemplatesConfiguration.class.getClassLoader());
+      templateEngine.setBinaryStaticContent(true);
+      return templateEngine;
+    }
+  }
+
+  /** Micrometer metrics, configured when Micrometer is on the classpath */
+  @Configuration(proxyBeanMethods = false)
+  @ConditionalOnClass(MeterRegistry.class)
+  static class MetricsConfiguration {
+
+    /**
+     * The metrics recorded when rendering, encoding and sending events
+     *
+     * @param registry The Micrometer registry, if the application has one
+     * @return The metrics bean, recording nothing without a registry
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    DatastarMetrics datastarMetrics(ObjectProvider<MeterRegistry> registry) {
+      MeterRegistry meterRegistry = registry.getIfUnique();
+      if (meterRegistry == null) {
+        return DatastarMetrics.NOOP;
+      }
+      return new MicrometerDatastarMetrics(meterRegistry);
+    }
+
+    /**
+     * The gauge of active connections
+     *
+     * @param connections The registry of SSE emitters grouped by topic
+     * @return The binder registering the gauge
+     */
+    @Bean
+    MeterBinder datastarConnectionsMeterBinder(DatastarConnections connections) {
+      return registry -> MicrometerDatastarMetrics.bindConnections(registry, connections);
+    }
+  }
+
+  /**
+   * Reactive connections, configured for Spring WebFlux applications. The starter depends on Spring
+   * Web MVC, so Spring Boot only starts a reactive web application, and creates these connections,
+   * when {@code spring.main.web-application-type=reactive} is set.
+   */
+  @Configuration(proxyBeanMethods = false)
+  @ConditionalOnClass(Flux.class)
+  @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+  static class ReactiveConfiguration {
+
+    /**
+     * Creates connections that publish their events as a Flux
+     *
+     * @param connections The registry of SSE emitters grouped by topic
+     * @param properties The Datastar configuration properties
+     * @return The reactive connections bean
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    ReactiveDatastarConnections reactiveDatastarConnections(
+        DatastarConnections connections, DatastarProperties properties) {
+      return new ReactiveDatastarConnections(
+          connections, properties.getReactive().getBufferSize());
+    }
   }
 }
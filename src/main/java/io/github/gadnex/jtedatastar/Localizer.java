@@ -2,16 +2,24 @@ package io.github.gadnex.jtedatastar;
 
 import gg.jte.support.LocalizationSupport;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.jspecify.annotations.Nullable;
 import org.springframework.context.MessageSource;
 
 /**
  * An implementation of the JTE LocalizationSupport interface to get language specific text using
  * the Spring MessageSource.
+ *
+ * <p>A Localizer created with the public constructor looks up every message in the MessageSource.
+ * The shared Localizers of {@link CachingMessageSource} keep every looked up message instead, so
+ * each key is resolved only once until the CachingMessageSource replaces them.
  */
 public class Localizer implements LocalizationSupport {
 
   private final MessageSource messageSource;
   private final Locale locale;
+  private final @Nullable Map<String, String> messages;
 
   /**
    * Constructor for the Localizer
@@ -20,12 +28,33 @@ public class Localizer implements LocalizationSupport {
    * @param locale The locale
    */
   public Localizer(final MessageSource messageSource, final Locale locale) {
+    this(messageSource, locale, false);
+  }
+
+  /**
+   * Constructor for a Localizer that optionally keeps the looked up messages
+   *
+   * @param messageSource The Spring MessageSource
+   * @param locale The locale
+   * @param keepMessages Whether every looked up message is kept by the Localizer
+   */
+  Localizer(final MessageSource messageSource, final Locale locale, boolean keepMessages) {
     this.messageSource = messageSource;
     this.locale = locale;
+    this.messages = keepMessages ? new ConcurrentHashMap<>() : null;
   }
 
   @Override
   public String lookup(String key) {
-    return messageSource.getMessage(key, null, locale);
+    if (messages == null) {
+      return messageSource.getMessage(key, null, locale);
+    }
+    String message = messages.get(key);
+    if (message == null) {
+      // Not computeIfAbsent, the MessageSource may be slow and must not block other keys
+      message = messageSource.getMessage(key, null, locale);
+      messages.putIfAbsent(key, message);
+    }
+    return message;
   }
 }
@@ -0,0 +1,136 @@
+package io.github.gadnex.jtedatastar;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records Datastar measurements with Micrometer.
+ *
+ * <ul>
+ *   <li>{@code datastar.render} timer, tagged with the template
+ *   <li>{@code datastar.signals.serialize} timer
+ *   <li>{@code datastar.events} counter, tagged with the event type
+ *   <li>{@code datastar.send} timer per SSE emitter, tagged with the outcome
+ *   <li>{@code datastar.send.failures} counter, tagged with the outcome
+ *   <li>{@code datastar.send.bytes} distribution of the bytes written per SSE emitter
+ *   <li>{@code datastar.send.skipped} counter of unchanged fragments and signals not sent
+ *   <li>{@code datastar.connections} gauge of the connections in {@link DatastarConnections}
+ * </ul>
+ *
+ * <p>Meters are looked up once and kept, so recording a measurement does not allocate.
+ */
+public class MicrometerDatastarMetrics implements DatastarMetrics {
+
+  private final MeterRegistry registry;
+  private final Map<String, Timer> renderTimers = new ConcurrentHashMap<>();
+  private final Map<String, Counter> eventCounters = new ConcurrentHashMap<>();
+  private final Timer serializeTimer;
+  private final Map<SendOutcome, Timer> sendTimers = new EnumMap<>(SendOutcome.class);
+  private final Map<SendOutcome, Counter> failureCounters = new EnumMap<>(SendOutcome.class);
+  private final DistributionSummary sentBytes;
+  private final Counter skipped;
+
+  /**
+   * Constructor
+   *
+   * @param registry The registry to record the measurements in
+   */
+  public MicrometerDatastarMetrics(MeterRegistry registry) {
+    this.registry = registry;
+    this.serializeTimer =
+        Timer.builder("datastar.signals.serialize")
+            .description("Time taken to serialize signals to JSON")
+            .register(registry);
+    for (SendOutcome outcome : SendOutcome.values()) {
+      sendTimers.put(
+          outcome,
+          Timer.builder("datastar.send")
+              .description("Time an SSE emitter send blocked for")
+              .tag("outcome", outcome.name())
+              .register(registry));
+      failureCounters.put(
+          outcome,
+          Counter.builder("datastar.send.failures")
+              .description("Events not delivered to an SSE emitter")
+              .tag("outcome", outcome.name())
+              .register(registry));
+    }
+    this.sentBytes =
+        DistributionSummary.builder("datastar.send.bytes")
+            .description("Bytes written to an SSE emitter per event")
+            .baseUnit("bytes")
+            .register(registry);
+    this.skipped =
+        Counter.builder("datastar.send.skipped")
+            .description("Events not sent because the connection already had the same content")
+            .register(registry);
+  }
+
+  /**
+   * Register the gauge of connections registered with {@link DatastarConnections}
+   *
+   * @param registry The registry to register the gauge in
+   * @param connections The connections registry
+   */
+  public static void bindConnections(MeterRegistry registry, DatastarConnections connections) {
+    Gauge.builder("datastar.connections", connections, DatastarConnections::size)
+        .description("Connections registered with DatastarConnections")
+        .register(registry);
+  }
+
+  @Override
+  public void rendered(String templateName, long nanos) {
+    renderTimers
+        .computeIfAbsent(
+            templateName,
+            name ->
+                Timer.builder("datastar.render")
+                    .description("Time taken to render a template")
+                    .tag("template", name)
+                    .register(registry))
+        .record(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  public void serialized(long nanos) {
+    serializeTimer.record(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  public void emitted(String eventType, int bytes) {
+    eventCounters
+        .computeIfAbsent(
+            eventType,
+            type ->
+                Counter.builder("datastar.events")
+                    .description("Datastar events emitted")
+                    .tag("type", type)
+                    .register(registry))
+        .increment();
+  }
+
+  @Override
+  public void sent(SendOutcome outcome, int bytes, long nanos) {
+    switch (outcome) {
+      case SENT -> {
+        sendTimers.get(outcome).record(nanos, TimeUnit.NANOSECONDS);
+        sentBytes.record(bytes);
+      }
+      case QUEUED -> {}
+      case SKIPPED -> skipped.increment();
+      case DROPPED, FAILED, TIMED_OUT -> {
+        if (nanos > 0) {
+          sendTimers.get(outcome).record(nanos, TimeUnit.NANOSECONDS);
+        }
+        failureCounters.get(outcome).increment();
+      }
+    }
+  }
+}
@@ -0,0 +1,48 @@
+package io.github.gadnex.jtedatastar;
+
+import gg.jte.CodeResolver;
+import java.util.List;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * A JTE code resolver that minifies templates with {@link HtmlMinifier} when they are loaded, so
+ * templates compiled at runtime, such as in development mode, are minified once when they are
+ * compiled instead of on every emit.
+ */
+public class MinifyingCodeResolver implements CodeResolver {
+
+  private final CodeResolver delegate;
+
+  /**
+   * Constructor
+   *
+   * @param delegate The code resolver that loads the templates
+   */
+  public MinifyingCodeResolver(CodeResolver delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public @Nullable String resolve(String name) {
+    String code = delegate.resolve(name);
+    if (code == null || !HtmlMinifier.isTemplate(name)) {
+      return code;
+    }
+    return HtmlMinifier.minify(code);
+  }
+
+  @Override
+  public long getLastModified(String name) {
+    return delegate.getLastModified(name);
+  }
+
+  @Override
+  public List<String> resolveAllTemplateNames() {
+    return delegate.resolveAllTemplateNames();
+  }
+
+  @Override
+  public boolean exists(String name) {
+    return delegate.exists(name);
+  }
+}
@@ -0,0 +1,364 @@
+package io.github.gadnex.jtedatastar;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * A {@link DatastarBroadcastBus} that sends every frame as UDP multicast datagrams to the other
+ * nodes that joined the same multicast group and port.
+ *
+ * <p>Multicast loopback is enabled, so several nodes on the same machine can form a cluster. Every
+ * datagram carries the id of the sending node, which ignores its own datagrams. A frame that does
+ * not fit in one datagram of at most {@link #MAX_DATAGRAM_SIZE} bytes is split into chunks, and
+ * frames larger than {@link #MAX_FRAME_SIZE} bytes are not published. UDP does not guarantee
+ * delivery, a client that misses a frame catches up on its next reconnect when replay is enabled.
+ *
+ * <p><strong>Received frames are written as they are to the SSE streams of this node.</strong>
+ * Without a shared secret any host that can reach the multicast group can inject events into every
+ * connected browser, so the bus must then only run on a trusted network. With a shared secret every
+ * datagram is signed with HMAC-SHA256, and datagrams without a valid signature are dropped. The
+ * signature does not encrypt the frames and does not prevent a captured datagram from being
+ * replayed.
+ */
+public final class MulticastBroadcastBus implements DatastarBroadcastBus {
+
+  /** The maximum size of a datagram, including the header, the chunk and the signature */
+  public static final int MAX_DATAGRAM_SIZE = 65_507;
+
+  /** The maximum size of a published frame, including its topic */
+  public static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+
+  private static final Log logger = LogFactory.getLog(MulticastBroadcastBus.class);
+
+  private static final int VERSION = 2;
+  private static final String MAC_ALGORITHM = "HmacSHA256";
+  private static final int MAC_SIZE = 32;
+  private static final int HEADER_SIZE = 1 + 16 + 4 + 4;
+  private static final int CHUNK_SIZE = MAX_DATAGRAM_SIZE - HEADER_SIZE - MAC_SIZE;
+
+  private static final int RECEIVE_BUFFER_SIZE = 4 * 1024 * 1024;
+
+  /** The maximum number of frames whose chunks are being received at the same time */
+  private static final int PENDING_FRAMES = 16;
+
+  private final UUID nodeId = UUID.randomUUID();
+  private final AtomicInteger sequence = new AtomicInteger();
+  private final @Nullable SecretKeySpec secret;
+  private final MulticastSocket socket;
+  private final InetSocketAddress group;
+  private final Thread receiver;
+  private volatile @Nullable Listener listener;
+  private volatile boolean closed;
+
+  /**
+   * Constructor that joins the multicast group on the default network interface, without a shared
+   * secret
+   *
+   * @param group The multicast group address, such as 239.1.2.3
+   * @param port The UDP port
+   */
+  public MulticastBroadcastBus(InetAddress group, int port) {
+    this(group, port, null);
+  }
+
+  /**
+   * Constructor without a shared secret
+   *
+   * @param group The multicast group address, such as 239.1.2.3
+   * @param port The UDP port
+   * @param networkInterface The network interface to join the group on, or null for the default
+   *     interface
+   */
+  public MulticastBroadcastBus(
+      InetAddress group, int port, @Nullable NetworkInterface networkInterface) {
+    this(group, port, networkInterface, null);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param group The multicast group address, such as 239.1.2.3
+   * @param port The UDP port
+   * @param networkInterface The network interface to join the group on, or null for the default
+   *     interface
+   * @param secret The secret shared by the nodes to sign and verify datagrams, or null to accept
+   *     unsigned datagrams from any host
+   */
+  public MulticastBroadcastBus(
+      InetAddress group,
+      int port,
+      @Nullable NetworkInterface networkInterface,
+      @Nullable String secret) {
+    if (!group.isMulticastAddress()) {
+      throw new IllegalArgumentException(group + " is not a multicast address");
+    }
+    if (secret != null && secret.isEmpty()) {
+      throw new IllegalArgumentException("The shared secret must not be empty");
+    }
+    this.group = new InetSocketAddress(group, port);
+    this.secret =
+        secret == null
+            ? null
+            : new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), MAC_ALGORITHM);
+    if (secret == null) {
+      logger.warn(
+          "Multicast broadcast bus on port "
+              + port
+              + " accepts unsigned datagrams, only run it on a trusted network or set a secret");
+    }
+    try {
+      socket = new MulticastSocket(port);
+      socket.setOption(StandardSocketOptions.IP_MULTICAST_LOOP, true);
+      // Room for the chunks of a large frame that arrive in a burst
+      socket.setOption(StandardSocketOptions.SO_RCVBUF, RECEIVE_BUFFER_SIZE);
+      if (networkInterface != null) {
+        socket.setOption(StandardSocketOptions.IP_MULTICAST_IF, networkInterface);
+      }
+      socket.joinGroup(this.group, networkInterface);
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+    receiver =
+        Thread.ofPlatform().name("datastar-broadcast-" + port).daemon().start(this::receive);
+  }
+
+  @Override
+  public void publish(String topic, SseFrame frame) {
+    byte[] message = encode(topic, frame);
+    if (message.length > MAX_FRAME_SIZE) {
+      logger.warn(
+          "Frame of "
+              + frame.size()
+              + " bytes for topic "
+              + topic
+              + " exceeds "
+              + MAX_FRAME_SIZE
+              + " bytes and is not published to the other nodes");
+      return;
+    }
+    int chunks = Math.max(1, (message.length + CHUNK_SIZE - 1) / CHUNK_SIZE);
+    int frameSequence = sequence.incrementAndGet();
+    @Nullable Mac mac = mac();
+    try {
+      for (int chunk = 0; chunk < chunks; chunk++) {
+        int offset = chunk * CHUNK_SIZE;
+        int length = Math.min(CHUNK_SIZE, message.length - offset);
+        ByteBuffer datagram = ByteBuffer.allocate(HEADER_SIZE + length + MAC_SIZE);
+        datagram.put((byte) VERSION);
+        datagram.putLong(nodeId.getMostSignificantBits());
+        datagram.putLong(nodeId.getLeastSignificantBits());
+        datagram.putInt(frameSequence);
+        datagram.putShort((short) chunk);
+        datagram.putShort((short) chunks);
+        datagram.put(message, offset, length);
+        int size = datagram.position();
+        if (mac != null) {
+          mac.update(datagram.array(), 0, size);
+          datagram.put(mac.doFinal());
+          size = datagram.position();
+        }
+        socket.send(new DatagramPacket(datagram.array(), size, group));
+      }
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+  }
+
+  @Override
+  public void subscribe(Listener listener) {
+    this.listener = listener;
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    socket.close();
+    receiver.interrupt();
+  }
+
+  private @Nullable Mac mac() {
+    if (secret == null) {
+      return null;
+    }
+    try {
+      Mac mac = Mac.getInstance(MAC_ALGORITHM);
+      mac.init(secret);
+      return mac;
+    } catch (GeneralSecurityException ex) {
+      throw new IllegalStateException(MAC_ALGORITHM + " is not available", ex);
+    }
+  }
+
+  private byte[] encode(String topic, SseFrame frame) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(frame.size() + 128);
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      out.writeUTF(topic);
+      writeNullable(out, frame.id());
+      writeNullable(out, frame.name());
+      writeNullable(out, frame.coalesceKey());
+      out.writeInt(frame.size());
+      frame.writeTo(out);
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+    return bytes.toByteArray();
+  }
+
+  private void receive() {
+    byte[] buffer = new byte[MAX_DATAGRAM_SIZE];
+    @Nullable Mac mac = mac();
+    Map<PartialFrame.Key, PartialFrame> pending =
+        new LinkedHashMap<>() {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<PartialFrame.Key, PartialFrame> eldest) {
+            // A frame that lost a chunk is never completed
+            return size() > PENDING_FRAMES;
+          }
+        };
+    while (!closed) {
+      DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+      try {
+        socket.receive(packet);
+        receive(Arrays.copyOf(packet.getData(), packet.getLength()), mac, pending);
+      } catch (IOException ex) {
+        if (!closed) {
+          logger.warn("Failed to receive a multicast datagram", ex);
+        }
+      } catch (RuntimeException ex) {
+        // A failing listener must not stop the node from receiving later frames
+        logger.warn("Failed to dispatch a frame received from another node", ex);
+      }
+    }
+  }
+
+  private void receive(
+      byte[] datagram, @Nullable Mac mac, Map<PartialFrame.Key, PartialFrame> pending)
+      throws IOException {
+    int length = datagram.length;
+    if (mac != null) {
+      length -= MAC_SIZE;
+      if (length < HEADER_SIZE) {
+        logger.debug("Dropped a multicast datagram without a signature");
+        return;
+      }
+      mac.update(datagram, 0, length);
+      byte[] expected = mac.doFinal();
+      if (!MessageDigest.isEqual(expected, Arrays.copyOfRange(datagram, length, datagram.length))) {
+        logger.debug("Dropped a multicast datagram with an invalid signature");
+        return;
+      }
+    }
+    if (length < HEADER_SIZE) {
+      logger.debug("Dropped a multicast datagram without a header");
+      return;
+    }
+    ByteBuffer in = ByteBuffer.wrap(datagram, 0, length);
+    if (in.get() != VERSION) {
+      logger.debug("Dropped a multicast datagram of another version");
+      return;
+    }
+    UUID sender = new UUID(in.getLong(), in.getLong());
+    Listener received = listener;
+    if (sender.equals(nodeId) || received == null) {
+      return;
+    }
+    int frameSequence = in.getInt();
+    int chunk = Short.toUnsignedInt(in.getShort());
+    int chunks = Short.toUnsignedInt(in.getShort());
+    byte[] bytes = Arrays.copyOfRange(datagram, HEADER_SIZE, length);
+    if (chunks > 1) {
+      PartialFrame.Key key = new PartialFrame.Key(sender, frameSequence);
+      PartialFrame partial = pending.computeIfAbsent(key, k -> new PartialFrame(chunks));
+      byte @Nullable [] message = partial.add(chunk, bytes);
+      if (message == null) {
+        return;
+      }
+      pending.remove(key);
+      bytes = message;
+    }
+    decode(bytes, received);
+  }
+
+  private static void decode(byte[] message, Listener received) throws IOException {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(message));
+    String topic = in.readUTF();
+    @Nullable String id = readNullable(in);
+    @Nullable String name = readNullable(in);
+    @Nullable String coalesceKey = readNullable(in);
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    received.received(topic, SseFrame.decoded(bytes, id, name, coalesceKey));
+  }
+
+  private static void writeNullable(DataOutputStream out, @Nullable String value)
+      throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) {
+      out.writeUTF(value);
+    }
+  }
+
+  private static @Nullable String readNullable(DataInputStream in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+
+  /** The chunks of a frame received so far */
+  private static final class PartialFrame {
+
+    record Key(UUID sender, int sequence) {}
+
+    private final byte[][] chunks;
+    private int received;
+    private int size;
+
+    PartialFrame(int count) {
+      chunks = new byte[count][];
+    }
+
+    /**
+     * Add a received chunk
+     *
+     * @return The whole frame once all chunks are received, null otherwise
+     */
+    byte @Nullable [] add(int chunk, byte[] bytes) {
+      if (chunk >= chunks.length || chunks[chunk] != null) {
+        return null;
+      }
+      chunks[chunk] = bytes;
+      received++;
+      size += bytes.length;
+      if (received < chunks.length) {
+        return null;
+      }
+      ByteBuffer message = ByteBuffer.allocate(size);
+      for (byte[] part : chunks) {
+        message.put(part);
+      }
+      return message.array();
+    }
+  }
+}
@@ -0,0 +1,280 @@
+package io.github.gadnex.jtedatastar;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import org.jspecify.annotations.Nullable;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * An SSE emitter that writes to the servlet response with non-blocking servlet I/O, instead of
+ * blocking the sending thread until a slow client has read the event.
+ *
+ * <p>The emitter starts the servlet async context itself and registers a {@link WriteListener}.
+ * Sent events are written only while the container reports the connection as writable, and are
+ * otherwise kept in memory until the container calls back that it can be written to again. A send
+ * never blocks, so a stalled client does not hold a thread or the carrier of a virtual thread.
+ * Create it in a controller method that takes the servlet request and response and returns
+ * nothing, then register it with {@link DatastarConnections} like any other SSE emitter.
+ *
+ * <p>Up to the maximum number of pending bytes are kept for a client that does not read them. A
+ * client that falls further behind makes the send fail, which removes it from {@link
+ * DatastarConnections}.
+ */
+public class NonBlockingSseEmitter extends SseEmitter {
+
+  /** Default number of bytes kept for a client that has not read them yet */
+  public static final int DEFAULT_MAX_PENDING_BYTES = 1024 * 1024;
+
+  private final AsyncContext asyncContext;
+  private final ServletOutputStream outputStream;
+  private final int maxPendingBytes;
+  private final Queue<byte[]> pending = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger pendingBytes = new AtomicInteger();
+  private final AtomicInteger drains = new AtomicInteger();
+  private final AtomicBoolean completed = new AtomicBoolean();
+  private final List<Runnable> completionCallbacks = new CopyOnWriteArrayList<>();
+  private final List<Consumer<Throwable>> errorCallbacks = new CopyOnWriteArrayList<>();
+  private final List<Runnable> timeoutCallbacks = new CopyOnWriteArrayList<>();
+  private volatile boolean completing;
+  private volatile boolean aborted;
+  private volatile boolean closed;
+  private volatile @Nullable Throwable failure;
+  private boolean flushNeeded;
+
+  /**
+   * Constructor without a timeout and with the default maximum number of pending bytes
+   *
+   * @param request The servlet request of the SSE stream
+   * @param response The servlet response the events are written to
+   * @throws IOException If the response output stream cannot be opened
+   */
+  public NonBlockingSseEmitter(HttpServletRequest request, HttpServletResponse response)
+      throws IOException {
+    this(request, response, 0, DEFAULT_MAX_PENDING_BYTES);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param request The servlet request of the SSE stream
+   * @param response The servlet response the events are written to
+   * @param timeout The time in milliseconds after which the stream is completed, or 0 for no
+   *     timeout
+   * @param maxPendingBytes The number of bytes kept for a client that has not read them yet
+   * @throws IOException If the response output stream cannot be opened
+   */
+  public NonBlockingSseEmitter(
+      HttpServletRequest request, HttpServletResponse response, long timeout, int maxPendingBytes)
+      throws IOException {
+    super(timeout);
+    if (maxPendingBytes < 1) {
+      throw new IllegalArgumentException("maxPendingBytes must be at least 1");
+    }
+    this.maxPendingBytes = maxPendingBytes;
+    response.setContentType(MediaType.TEXT_EVENT_STREAM_VALUE);
+    response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+    response.setHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+    this.asyncContext =
+        request.isAsyncStarted()
+            ? request.getAsyncContext()
+            : request.startAsync(request, response);
+    asyncContext.setTimeout(Math.max(timeout, 0));
+    asyncContext.addListener(new StreamListener());
+    this.outputStream = response.getOutputStream();
+    // The container calls onWritePossible once the listener is set, which commits the headers
+    outputStream.setWriteListener(new StreamWriter());
+  }
+
+  /**
+   * The number of bytes sent but not yet written to the connection
+   *
+   * @return The pending bytes
+   */
+  public int pendingBytes() {
+    return pendingBytes.get();
+  }
+
+  @Override
+  public void send(SseEmitter.SseEventBuilder eventBuilder) throws IOException {
+    if (completing) {
+      throw new IllegalStateException("The SSE emitter has already been completed");
+    }
+    if (closed) {
+      throw new IOException("The SSE stream has been closed");
+    }
+    for (ResponseBodyEmitter.DataWithMediaType data : eventBuilder.build()) {
+      byte[] bytes =
+          data.getData() instanceof byte[] encoded
+              ? encoded
+              : data.getData().toString().getBytes(StandardCharsets.UTF_8);
+      if (pendingBytes.addAndGet(bytes.length) > maxPendingBytes) {
+        int unread = pendingBytes.addAndGet(-bytes.length);
+        throw new IOException(
+            "Cannot send to the SSE emitter, " + unread + " bytes have not been read");
+      }
+      pending.add(bytes);
+    }
+    drain();
+  }
+
+  @Override
+  public void complete() {
+    completing = true;
+    drain();
+  }
+
+  @Override
+  public void completeWithError(Throwable ex) {
+    abort(ex);
+  }
+
+  @Override
+  public void onTimeout(Runnable callback) {
+    timeoutCallbacks.add(callback);
+  }
+
+  @Override
+  public void onError(Consumer<Throwable> callback) {
+    errorCallbacks.add(callback);
+  }
+
+  @Override
+  public void onCompletion(Runnable callback) {
+    completionCallbacks.add(callback);
+  }
+
+  private void abort(@Nullable Throwable ex) {
+    failure = ex;
+    completing = true;
+    aborted = true;
+    drain();
+  }
+
+  /**
+   * Write pending events on the calling thread, unless another thread is writing, in which case
+   * that thread writes them. Nothing is locked while calling the container, which may hold its own
+   * locks when it calls the write listener.
+   */
+  private void drain() {
+    if (drains.getAndIncrement() != 0) {
+      return;
+    }
+    int missed = 1;
+    do {
+      writePending();
+      missed = drains.addAndGet(-missed);
+    } while (missed != 0);
+  }
+
+  private void writePending() {
+    if (closed) {
+      pending.clear();
+      return;
+    }
+    if (!aborted) {
+      try {
+        while (outputStream.isReady()) {
+          byte[] bytes = pending.poll();
+          if (bytes != null) {
+            pendingBytes.addAndGet(-bytes.length);
+            outputStream.write(bytes);
+            flushNeeded = true;
+          } else if (flushNeeded) {
+            flushNeeded = false;
+            outputStream.flush();
+          } else {
+            if (completing) {
+              close();
+            }
+            return;
+          }
+        }
+        // Not writable, the container calls onWritePossible when it can be written to again
+        return;
+      } catch (IOException ex) {
+        failure = ex;
+        aborted = true;
+      }
+    }
+    pending.clear();
+    Throwable error = failure;
+    if (error != null) {
+      for (Consumer<Throwable> callback : errorCallbacks) {
+        callback.accept(error);
+      }
+    }
+    close();
+  }
+
+  private void close() {
+    closed = true;
+    try {
+      asyncContext.complete();
+    } catch (IllegalStateException ex) {
+      // The container already completed the request
+    }
+  }
+
+  /** Writes pending events when the container reports the connection as writable again */
+  private final class StreamWriter implements WriteListener {
+
+    @Override
+    public void onWritePossible() {
+      drain();
+    }
+
+    @Override
+    public void onError(Throwable ex) {
+      abort(ex);
+    }
+  }
+
+  /** Runs the callbacks when the async request completes, times out or fails */
+  private final class StreamListener implements AsyncListener {
+
+    @Override
+    public void onComplete(AsyncEvent event) {
+      closed = true;
+      if (completed.compareAndSet(false, true)) {
+        for (Runnable callback : completionCallbacks) {
+          callback.run();
+        }
+      }
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) {
+      for (Runnable callback : timeoutCallbacks) {
+        callback.run();
+      }
+      abort(null);
+    }
+
+    @Override
+    public void onError(AsyncEvent event) {
+      abort(event.getThrowable());
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) {
+      // The async context is started once, by the constructor
+    }
+  }
+}
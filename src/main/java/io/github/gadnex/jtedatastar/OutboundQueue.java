@@ -0,0 +1,270 @@
+package io.github.gadnex.jtedatastar;
+
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Bounded queue of frames waiting to be written to a single SSE emitter, drained in order by one
+ * virtual writer thread. Emitting only enqueues, so a slow client never blocks the emitting thread.
+ *
+ * <p>With signal coalescing enabled, a PatchSignals frame queued directly behind another
+ * PatchSignals frame that has not been sent yet is merged into it, so bursts of signal updates
+ * become one frame.
+ */
+final class OutboundQueue {
+
+  private final SseEmitter sseEmitter;
+  private final int capacity;
+  private final OverflowPolicy overflowPolicy;
+  private final int maxOverflows;
+  private final boolean coalesceSignals;
+  private final DatastarMetrics metrics;
+  private final Consumer<Throwable> onFailure;
+  private final Runnable onCompleted;
+  private final ArrayDeque<SseFrame> frames = new ArrayDeque<>();
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition notEmpty = lock.newCondition();
+  private long dropped;
+  private long overflows;
+  private long coalesced;
+  private boolean closed;
+  private boolean completing;
+
+  /**
+   * Constructor
+   *
+   * @param sseEmitter The SSE emitter the frames are written to
+   * @param capacity The maximum number of queued frames
+   * @param overflowPolicy What to do when the queue is full
+   * @param maxOverflows The number of overflows before {@link OverflowPolicy#DISCONNECT}
+   *     disconnects
+   * @param coalesceSignals Whether to merge consecutive queued PatchSignals frames
+   * @param metrics The metrics to record the sends in
+   * @param onFailure Called when writing fails or the client is disconnected, also on the emitting
+   *     thread, so it must not wait for the send in progress
+   * @param onCompleted Called after the SSE emitter was completed once the queue was drained
+   */
+  OutboundQueue(
+      SseEmitter sseEmitter,
+      int capacity,
+      OverflowPolicy overflowPolicy,
+      int maxOverflows,
+      boolean coalesceSignals,
+      DatastarMetrics metrics,
+      Consumer<Throwable> onFailure,
+      Runnable onCompleted) {
+    this.sseEmitter = sseEmitter;
+    this.capacity = capacity;
+    this.overflowPolicy = overflowPolicy;
+    this.maxOverflows = maxOverflows;
+    this.coalesceSignals = coalesceSignals;
+    this.metrics = metrics;
+    this.onFailure = onFailure;
+    this.onCompleted = onCompleted;
+  }
+
+  /** Start the writer thread */
+  void start() {
+    Thread.ofVirtual().name("datastar-writer").start(this::drain);
+  }
+
+  /**
+   * Queue a frame to be written
+   *
+   * @param frame The frame
+   * @return {@link SendOutcome#QUEUED}, {@link SendOutcome#DROPPED}, or {@link SendOutcome#FAILED}
+   *     if the client was disconnected
+   */
+  SendOutcome offer(SseFrame frame) {
+    lock.lock();
+    try {
+      if (closed || completing) {
+        return SendOutcome.DROPPED;
+      }
+      if (coalesceSignals && frame.signals() != null && !frames.isEmpty()) {
+        SseFrame merged = SignalsPatch.coalesce(frames.peekLast(), frame);
+        if (merged != null) {
+          frames.pollLast();
+          frames.addLast(merged);
+          coalesced++;
+          return SendOutcome.QUEUED;
+        }
+      }
+      if (frames.size() < capacity) {
+        enqueue(frame);
+        return SendOutcome.QUEUED;
+      }
+      overflows++;
+      switch (overflowPolicy) {
+        case DROP_OLDEST -> {
+          frames.pollFirst();
+          dropped++;
+          enqueue(frame);
+          return SendOutcome.QUEUED;
+        }
+        case COALESCE -> {
+          String coalesceKey = frame.coalesceKey();
+          if (coalesceKey == null || !replace(coalesceKey, frame)) {
+            frames.pollFirst();
+            dropped++;
+            enqueue(frame);
+          }
+          return SendOutcome.QUEUED;
+        }
+        case DROP_NEWEST -> {
+          dropped++;
+          return SendOutcome.DROPPED;
+        }
+        case DISCONNECT -> {
+          dropped++;
+          if (overflows < maxOverflows) {
+            return SendOutcome.DROPPED;
+          }
+        }
+      }
+    } finally {
+      lock.unlock();
+    }
+    // Must not complete the SSE emitter on this thread, that waits for the send to the slow client
+    onFailure.accept(
+        new IllegalStateException(
+            "Outbound queue overflowed " + maxOverflows + " times, disconnecting slow client"));
+    return SendOutcome.FAILED;
+  }
+
+  /**
+   * Stop accepting frames and complete the SSE emitter once the queued frames have been written
+   */
+  void completeWhenDrained() {
+    lock.lock();
+    try {
+      completing = true;
+      notEmpty.signal();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Discard the queued frames and stop the writer thread */
+  void close() {
+    lock.lock();
+    try {
+      closed = true;
+      frames.clear();
+      notEmpty.signal();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  int depth() {
+    lock.lock();
+    try {
+      return frames.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  int capacity() {
+    return capacity;
+  }
+
+  long dropped() {
+    lock.lock();
+    try {
+      return dropped;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  long overflows() {
+    lock.lock();
+    try {
+      return overflows;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  long coalesced() {
+    lock.lock();
+    try {
+      return coalesced;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Replace the queued frames with the same coalesce key by a newer frame, at the position of the
+   * oldest of them, so the frames queued in between keep their order relative to it
+   *
+   * @return True if a queued frame was replaced
+   */
+  private boolean replace(String coalesceKey, SseFrame frame) {
+    boolean replaced = false;
+    // Rotate the whole queue once, which keeps the order of the other frames
+    for (int i = frames.size(); i > 0; i--) {
+      SseFrame queued = Objects.requireNonNull(frames.pollFirst());
+      if (!coalesceKey.equals(queued.coalesceKey())) {
+        frames.addLast(queued);
+        continue;
+      }
+      dropped++;
+      if (!replaced) {
+        frames.addLast(frame);
+        replaced = true;
+      }
+    }
+    return replaced;
+  }
+
+  private void enqueue(SseFrame frame) {
+    frames.addLast(Objects.requireNonNull(frame));
+    notEmpty.signal();
+  }
+
+  private void drain() {
+    while (true) {
+      SseFrame frame;
+      lock.lock();
+      try {
+        while (frames.isEmpty() && !closed && !completing) {
+          notEmpty.awaitUninterruptibly();
+        }
+        if (closed) {
+          return;
+        }
+        frame = frames.pollFirst();
+        if (frame == null) {
+          break;
+        }
+      } finally {
+        lock.unlock();
+      }
+      long start = System.nanoTime();
+      try {
+        sseEmitter.send(frame.event());
+        sent(SendOutcome.SENT, frame, System.nanoTime() - start);
+      } catch (Exception ex) {
+        sent(SendOutcome.FAILED, frame, System.nanoTime() - start);
+        onFailure.accept(ex);
+        return;
+      }
+    }
+    sseEmitter.complete();
+    onCompleted.run();
+  }
+
+  private void sent(SendOutcome outcome, SseFrame frame, long nanos) {
+    if (!DatastarHeartbeat.isHeartbeat(frame)) {
+      metrics.sent(outcome, frame.size(), nanos);
+    }
+  }
+}
@@ -0,0 +1,16 @@
+package io.github.gadnex.jtedatastar;
+
+/** What to do when an event is emitted to a connection whose outbound queue is full. */
+public enum OverflowPolicy {
+  /** Drop the oldest queued event to make room for the new event. This is the default. */
+  DROP_OLDEST,
+  /** Drop the new event. */
+  DROP_NEWEST,
+  /**
+   * Replace queued events that the new event supersedes, such as an earlier patch of the same
+   * selector. Falls back to dropping the oldest queued event.
+   */
+  COALESCE,
+  /** Drop the new event, and disconnect the client once the maximum number of overflows is hit. */
+  DISCONNECT
+}
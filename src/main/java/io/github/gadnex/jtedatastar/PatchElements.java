@@ -1,11 +1,12 @@
 package io.github.gadnex.jtedatastar;
 
 import gg.jte.TemplateEngine;
-import gg.jte.output.StringOutput;
+import gg.jte.models.runtime.JteModel;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import org.jspecify.annotations.Nullable;
 import org.springframework.context.MessageSource;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
@@ -23,17 +24,27 @@ public class PatchElements extends AbstractDatastarEmitter {
   private final String templateSuffix;
   private final Map<String, Object> attributes;
   private final MessageSource messageSource;
+  private final @Nullable RenderCache renderCache;
+  private final boolean minifiedTemplates;
+
+  private @Nullable String templateName;
+  private @Nullable Locale locale;
+  private @Nullable Object cacheKey;
+  private boolean cacheByAttributes;
   private @Nullable String template;
+  private @Nullable JteModel model;
   private @Nullable String selector;
   private @Nullable PatchMode patchMode;
   private @Nullable Namespace namespace;
   private @Nullable Boolean useViewTransition;
+  private boolean skipUnchanged;
+  private @Nullable String target;
 
   private static final String LOCALIZER = "localizer";
   private static final String DATASTAR_PATCH_ELEMENTS = " datastar-patch-elements";
   private static final String SELECTOR = " selector ";
   private static final String USE_VIEW_TRANSITION = " useViewTransition ";
-  private static final String ELEMENTS_DATALINE_LITERAL = " elements ";
+  static final String ELEMENTS_DATALINE_LITERAL = " elements ";
 
   /**
    * Constructor for creating the PatchElements emitter
@@ -48,11 +59,43 @@ public class PatchElements extends AbstractDatastarEmitter {
       String templateSuffix,
       Set<SseEmitter> sseEmitters,
       MessageSource messageSource) {
-    super(sseEmitters);
+    this(
+        templateEngine,
+        templateSuffix,
+        sseEmitters,
+        messageSource,
+        EventDispatcher.DEFAULT,
+        null,
+        false);
+  }
+
+  /**
+   * Constructor for creating the PatchElements emitter
+   *
+   * @param templateEngine The JTE template engine for rendering HTML elements
+   * @param templateSuffix The JTE template suffix for the JTE template files
+   * @param sseEmitters The set of SSE emitters to which to emit the events
+   * @param messageSource The Spring MessageSource for getting language specific text
+   * @param dispatcher The dispatcher used to send the event to the SSE emitters
+   * @param renderCache The cache of rendered fragments, or null to always render the template
+   * @param minifiedTemplates Whether the templates are minified by {@link HtmlMinifier}, so the
+   *     rendered lines are written verbatim instead of being trimmed
+   */
+  public PatchElements(
+      TemplateEngine templateEngine,
+      String templateSuffix,
+      Set<SseEmitter> sseEmitters,
+      MessageSource messageSource,
+      EventDispatcher dispatcher,
+      @Nullable RenderCache renderCache,
+      boolean minifiedTemplates) {
+    super(sseEmitters, dispatcher);
     this.templateEngine = templateEngine;
     this.templateSuffix = templateSuffix;
     this.attributes = new HashMap<>();
     this.messageSource = messageSource;
+    this.renderCache = renderCache;
+    this.minifiedTemplates = minifiedTemplates;
   }
 
   /**
@@ -62,7 +105,59 @@ public class PatchElements extends AbstractDatastarEmitter {
    * @return The PatchElements object
    */
   public PatchElements template(String templateName) {
+    this.templateName = templateName;
     template = templateName + templateSuffix;
+    model = null;
+    return this;
+  }
+
+  /**
+   * The required template for HTML element rendering, already resolved by {@link
+   * Datastar#template(String)}
+   *
+   * @param template The template for HTML element rendering
+   * @return The PatchElements object
+   */
+  public PatchElements template(DatastarTemplate template) {
+    this.templateName = template.name();
+    this.template = template.fileName();
+    model = null;
+    return this;
+  }
+
+  /**
+   * The required template for HTML element rendering, already resolved by {@link
+   * Datastar#template(String)}, and the Locale used for localization.
+   *
+   * @param template The template for HTML element rendering
+   * @param locale The locale used for localization
+   * @return The PatchElements object
+   */
+  public PatchElements template(DatastarTemplate template, Locale locale) {
+    template(template);
+    localize(locale);
+    return this;
+  }
+
+  /**
+   * The required template for HTML element rendering as a typed model generated by jte-models,
+   * such as {@code templates.greeting(name)}. The model calls the compiled template with its
+   * parameters directly, so the template and its parameters are checked at compile time and no
+   * attributes are looked up by name. Attributes are not used by the model.
+   *
+   * <p>A model does not expose its template name, so the name of the template it renders is passed
+   * as well. Renders are recorded under that name, and fragments cached with {@link
+   * #cacheKey(Object)} are kept per name, so models of different templates never share cached
+   * HTML.
+   *
+   * @param templateName The name of the template rendered by the model, used for metrics, caching
+   *     and skipping unchanged fragments
+   * @param model The template model with its parameters
+   * @return The PatchElements object
+   */
+  public PatchElements template(String templateName, JteModel model) {
+    template(templateName);
+    this.model = model;
     return this;
   }
 
@@ -75,11 +170,20 @@ public class PatchElements extends AbstractDatastarEmitter {
    * @return The PatchElements object
    */
   public PatchElements template(String templateName, Locale locale) {
-    template = templateName + templateSuffix;
-    attributes.put(LOCALIZER, new Localizer(messageSource, locale));
+    template(templateName);
+    localize(locale);
     return this;
   }
 
+  private void localize(Locale locale) {
+    this.locale = locale;
+    attributes.put(
+        LOCALIZER,
+        messageSource instanceof CachingMessageSource cachingMessageSource
+            ? cachingMessageSource.localizer(locale)
+            : new Localizer(messageSource, locale));
+  }
+
   /**
    * Add data attribute for template rendering.
    *
@@ -92,6 +196,62 @@ public class PatchElements extends AbstractDatastarEmitter {
     return this;
   }
 
+  /**
+   * Reuse the rendered HTML of an earlier PatchElements with the same template, cache key and
+   * locale, instead of rendering the template again. The cache key must identify everything the
+   * template output depends on, such as a version number of the rendered data.
+   *
+   * @param cacheKey The cache key, compared with equals
+   * @return The PatchElements object
+   */
+  public PatchElements cacheKey(Object cacheKey) {
+    this.cacheKey = cacheKey;
+    this.cacheByAttributes = false;
+    return this;
+  }
+
+  /**
+   * Reuse the rendered HTML of an earlier PatchElements with the same template, attributes and
+   * locale, instead of rendering the template again. The attribute values must implement equals
+   * and hashCode and must not be modified after they have been rendered. Template models are cached
+   * with {@link #cacheKey(Object)} instead.
+   *
+   * @return The PatchElements object
+   */
+  public PatchElements cached() {
+    this.cacheKey = null;
+    this.cacheByAttributes = true;
+    return this;
+  }
+
+  /**
+   * Do not send the patch to registered connections that already received the same content for
+   * the same target. The target is the selector, or the template name when there is no selector.
+   * Only applies to the outer, inner and replace patch modes, and only when every patch of the
+   * target goes through the same Datastar bean.
+   *
+   * @return The PatchElements object
+   */
+  public PatchElements skipUnchanged() {
+    this.skipUnchanged = true;
+    return this;
+  }
+
+  /**
+   * Do not send the patch to registered connections that already received the same content for
+   * the given target, such as the ID of the patched element. Only applies to the outer, inner and
+   * replace patch modes, and only when every patch of the target goes through the same Datastar
+   * bean.
+   *
+   * @param target The patched target
+   * @return The PatchElements object
+   */
+  public PatchElements skipUnchanged(String target) {
+    this.skipUnchanged = true;
+    this.target = target;
+    return this;
+  }
+
   /**
    * Selects the target element of the patch process using a CSS selector. Multiple selectors can be
    * added as a comma separated list.
@@ -137,11 +297,27 @@ public class PatchElements extends AbstractDatastarEmitter {
     return this;
   }
 
-  /** Emit the SSE event */
+  /** Emit the SSE event and wait until it has been sent to all SSE emitters */
   public void emit() {
+    emitAsync().join();
+  }
+
+  /**
+   * Emit the SSE event without waiting for the sends to finish
+   *
+   * @return A future that completes with the outcome per SSE emitter
+   */
+  public CompletableFuture<EmitResult> emitAsync() {
+    encode();
+    return emitEvents();
+  }
+
+  /** Write the lines of the PatchElements event into the frame, without emitting it */
+  void encode() {
     if ((patchMode != PatchMode.REMOVE) && (template == null)) {
       throw new IllegalStateException("The template must not be null");
     }
+    int start = event.size();
     event.name(DATASTAR_PATCH_ELEMENTS);
     if (patchMode != null) {
       event.data(patchMode.output());
@@ -151,23 +327,123 @@ public class PatchElements extends AbstractDatastarEmitter {
     }
     if (selector != null && !selector.isEmpty()) {
       event.data(SELECTOR + selector);
+      PatchMode mode = patchMode == null ? PatchMode.OUTER : patchMode;
+      if (mode == PatchMode.OUTER || mode == PatchMode.INNER || mode == PatchMode.REPLACE) {
+        // A later patch of the same selector and mode supersedes this one
+        event.coalesceKey(DATASTAR_PATCH_ELEMENTS + mode.output() + SELECTOR + selector);
+      }
     }
     if (useViewTransition != null) {
       event.data(USE_VIEW_TRANSITION + useViewTransition);
     }
     if (template != null) {
-      String html = renderHtmlElement();
-      html.lines()
-          .map(String::trim)
-          .filter(line -> !line.isEmpty())
-          .forEach(line -> event.data(ELEMENTS_DATALINE_LITERAL + line));
+      writeElements(template, event);
+    }
+    String patchTarget = patchTarget();
+    if (patchTarget != null) {
+      PatchMode mode = patchMode == null ? PatchMode.OUTER : patchMode;
+      boolean idempotent =
+          mode == PatchMode.OUTER || mode == PatchMode.INNER || mode == PatchMode.REPLACE;
+      event.target(patchTarget, skipUnchanged && idempotent ? start : -1);
     }
-    emitEvents();
   }
 
-  private String renderHtmlElement() {
-    var output = new StringOutput();
-    templateEngine.render(template, attributes, output);
-    return output.toString();
+  private @Nullable String patchTarget() {
+    if (target != null) {
+      return target;
+    }
+    if (selector != null && !selector.isEmpty()) {
+      return selector;
+    }
+    return templateName;
+  }
+
+  /**
+   * Key shared by PatchElements events whose elements can be patched as one event with the same
+   * result, such as patches by element ID or appends to the same selector. Elements of a later
+   * event with the same key are written after the elements of the earlier event.
+   *
+   * @return The merge key, or null if the event cannot be merged with another event
+   */
+  @Nullable String mergeKey() {
+    if (template == null) {
+      return null;
+    }
+    PatchMode mode = patchMode == null ? PatchMode.OUTER : patchMode;
+    boolean bySelector = selector != null && !selector.isEmpty();
+    boolean mergeable =
+        bySelector
+            ? mode == PatchMode.APPEND || mode == PatchMode.BEFORE
+            : mode == PatchMode.OUTER || mode == PatchMode.REPLACE;
+    if (!mergeable) {
+      return null;
+    }
+    return mode.output()
+        + (bySelector ? SELECTOR + selector : "")
+        + (namespace == null ? "" : namespace.output())
+        + (useViewTransition == null ? "" : USE_VIEW_TRANSITION + useViewTransition);
+  }
+
+  /**
+   * Write only the elements data lines of this event into the frame of an earlier event with the
+   * same {@link #mergeKey()}
+   *
+   * @param frame The frame of the earlier event
+   */
+  void encodeElements(SseFrame.Builder frame) {
+    if (template == null) {
+      throw new IllegalStateException("The template must not be null");
+    }
+    writeElements(template, frame);
+  }
+
+  private void writeElements(String template, SseFrame.Builder frame) {
+    RenderCache.Key key = renderCacheKey();
+    if (key == null || renderCache == null) {
+      renderHtmlElement(template, frame);
+      return;
+    }
+    byte[] elements = renderCache.get(key);
+    if (elements != null) {
+      frame.write(elements);
+      return;
+    }
+    int start = frame.size();
+    renderHtmlElement(template, frame);
+    renderCache.put(key, frame.bytesFrom(start));
+  }
+
+  private RenderCache.@Nullable Key renderCacheKey() {
+    String name = templateName;
+    if (name == null) {
+      return null;
+    }
+    if (cacheKey != null) {
+      return new RenderCache.Key(name, cacheKey, locale);
+    }
+    if (cacheByAttributes) {
+      if (model != null) {
+        throw new IllegalStateException("A template model is cached by cacheKey, not attributes");
+      }
+      Map<String, Object> key = new HashMap<>(attributes);
+      // The localizer is not comparable, the locale is part of the key instead
+      key.remove(LOCALIZER);
+      return new RenderCache.Key(name, key, locale);
+    }
+    return null;
+  }
+
+  private void renderHtmlElement(String template, SseFrame.Builder frame) {
+    // Rendered lines are written straight into the frame as they are produced, trimmed unless the
+    // template has already been minified
+    long start = System.nanoTime();
+    var output = new SseDataTemplateOutput(frame, ELEMENTS_DATALINE_LITERAL, !minifiedTemplates);
+    if (model != null) {
+      model.render(output);
+    } else {
+      templateEngine.render(template, attributes, output);
+    }
+    output.finish();
+    dispatcher.metrics().rendered(template, System.nanoTime() - start);
   }
 }
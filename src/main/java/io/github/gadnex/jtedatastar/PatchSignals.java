@@ -1,8 +1,13 @@
 package io.github.gadnex.jtedatastar;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import org.jspecify.annotations.Nullable;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import tools.jackson.core.JacksonException;
@@ -18,20 +23,49 @@ public class PatchSignals extends AbstractDatastarEmitter {
   private final Map<String, Object> signals;
   private final JsonMapper jsonMapper;
   private @Nullable Boolean onlyIfMissing;
+  private boolean onlyChanged;
 
   private static final String DATASTAR_PATCH_SIGNALS = " datastar-patch-signals";
+
+  /** The event type of PatchSignals frames */
+  static final String EVENT_TYPE = DATASTAR_PATCH_SIGNALS.strip();
   private static final String ONLY_IF_MISSING = " onlyIfMissing ";
   private static final String SIGNALS = " signals ";
 
+  /** Mapper used when no JSON mapper is passed in, shared so its serializer caches are reused */
+  private static final JsonMapper DEFAULT_JSON_MAPPER = new JsonMapper();
+
   /**
    * Constructor for creating the PatchSignals emitter
    *
    * @param sseEmitters The set of SSE emitters to which to emit the events
    */
   public PatchSignals(Set<SseEmitter> sseEmitters) {
-    super(sseEmitters);
+    this(sseEmitters, EventDispatcher.DEFAULT);
+  }
+
+  /**
+   * Constructor for creating the PatchSignals emitter
+   *
+   * @param sseEmitters The set of SSE emitters to which to emit the events
+   * @param dispatcher The dispatcher used to send the event to the SSE emitters
+   */
+  public PatchSignals(Set<SseEmitter> sseEmitters, EventDispatcher dispatcher) {
+    this(sseEmitters, dispatcher, DEFAULT_JSON_MAPPER);
+  }
+
+  /**
+   * Constructor for creating the PatchSignals emitter
+   *
+   * @param sseEmitters The set of SSE emitters to which to emit the events
+   * @param dispatcher The dispatcher used to send the event to the SSE emitters
+   * @param jsonMapper The JSON mapper used to serialize the signals
+   */
+  public PatchSignals(
+      Set<SseEmitter> sseEmitters, EventDispatcher dispatcher, JsonMapper jsonMapper) {
+    super(sseEmitters, dispatcher);
     signals = new HashMap<>();
-    this.jsonMapper = new JsonMapper();
+    this.jsonMapper = jsonMapper;
   }
 
   /**
@@ -45,6 +79,18 @@ public class PatchSignals extends AbstractDatastarEmitter {
     return this;
   }
 
+  /**
+   * Send each registered connection only the signals whose values differ from the values last sent
+   * to it, and skip connections for which no signal changed. Only use this for signals that are
+   * not changed in the browser, as the values there are not known to the server.
+   *
+   * @return The PatchSignals object
+   */
+  public PatchSignals onlyChanged() {
+    this.onlyChanged = true;
+    return this;
+  }
+
   /**
    * Specify one or more signals to emit. Should be a valid data-signals attribute.
    *
@@ -57,21 +103,60 @@ public class PatchSignals extends AbstractDatastarEmitter {
     return this;
   }
 
-  /** Emit the SSE event */
+  /** Emit the SSE event and wait until it has been sent to all SSE emitters */
   public void emit() {
+    emitAsync().join();
+  }
+
+  /**
+   * Emit the SSE event without waiting for the sends to finish
+   *
+   * @return A future that completes with the outcome per SSE emitter
+   */
+  public CompletableFuture<EmitResult> emitAsync() {
+    encode();
+    return emitEvents();
+  }
+
+  /** Write the lines of the PatchSignals event into the frame, without emitting it */
+  void encode() {
     if (signals.isEmpty()) {
       throw new IllegalStateException("No signals specified");
     }
+    long start = System.nanoTime();
+    write(event, onlyIfMissing, signals, jsonMapper);
+    dispatcher.metrics().serialized(System.nanoTime() - start);
+    // Copying the signals is only worth it when queued frames are merged or signals are compared
+    if (dispatcher.keepsSignals(onlyChanged)) {
+      event.signals(
+          new SignalsPatch(onlyIfMissing, new LinkedHashMap<>(signals), jsonMapper, onlyChanged));
+    }
+  }
+
+  /**
+   * Write the lines of a PatchSignals event
+   *
+   * @param event The frame builder to write to
+   * @param onlyIfMissing The onlyIfMissing value, or null to leave it out
+   * @param signals The signals to encode as JSON
+   * @param jsonMapper The JSON mapper
+   */
+  static void write(
+      SseFrame.Builder event,
+      @Nullable Boolean onlyIfMissing,
+      Object signals,
+      JsonMapper jsonMapper) {
     event.name(DATASTAR_PATCH_SIGNALS);
     if (onlyIfMissing != null) {
       event.data(ONLY_IF_MISSING + onlyIfMissing);
     }
-    try {
-      String signalsString = jsonMapper.writeValueAsString(signals);
-      event.data(SIGNALS + signalsString);
+    // Serialize straight into the frame, pretty printed JSON continues on extra data lines
+    try (OutputStream data = event.dataStream(SIGNALS)) {
+      jsonMapper.writeValue(data, signals);
     } catch (JacksonException ex) {
       throw new IllegalStateException("cannot convert signals to JSON", ex);
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
     }
-    emitEvents();
   }
 }
@@ -0,0 +1,109 @@
+package io.github.gadnex.jtedatastar;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * An immutable Datastar event that has been encoded once and can be emitted any number of times,
+ * such as a loading indicator, a static script or signals that reset a form. Created with {@link
+ * Datastar#preparePatchElements}, {@link Datastar#preparePatchSignals} or {@link
+ * Datastar#prepareExecuteScript}.
+ *
+ * <p>Emitting a prepared event only dispatches the already encoded frame. The event has no id, as
+ * every emit sends the same bytes, so it is not kept for replay to clients that reconnect. A
+ * prepared event is thread-safe and can be kept in a field and shared.
+ */
+public final class PreparedDatastarEvent {
+
+  private final SseFrame frame;
+  private final EventDispatcher dispatcher;
+
+  /**
+   * Constructor
+   *
+   * @param frame The encoded event
+   * @param dispatcher The dispatcher used to send the event to the SSE emitters
+   */
+  PreparedDatastarEvent(SseFrame frame, EventDispatcher dispatcher) {
+    this.frame = frame;
+    this.dispatcher = dispatcher;
+  }
+
+  /**
+   * The encoded event
+   *
+   * @return The frame
+   */
+  public SseFrame frame() {
+    return frame;
+  }
+
+  /**
+   * Emit the event to a collection of SSE emitters and wait until it has been sent to all of them
+   *
+   * @param sseEmitters Set of SSE emitters
+   */
+  public void emit(Set<SseEmitter> sseEmitters) {
+    emitAsync(sseEmitters).join();
+  }
+
+  /**
+   * Emit the event to a single SSE emitter and wait until it has been sent
+   *
+   * @param sseEmitter The SSE emitter
+   */
+  public void emit(SseEmitter sseEmitter) {
+    emitAsync(sseEmitter).join();
+  }
+
+  /**
+   * Emit the event to all SSE emitters registered under a topic and wait until it has been sent to
+   * all of them
+   *
+   * @param topic The topic registered with {@link DatastarConnections}
+   */
+  public void emit(String topic) {
+    emitAsync(topic).join();
+  }
+
+  /**
+   * Emit the event to a collection of SSE emitters without waiting for the sends to finish
+   *
+   * @param sseEmitters Set of SSE emitters
+   * @return A future that completes with the outcome per SSE emitter
+   */
+  public CompletableFuture<EmitResult> emitAsync(Set<SseEmitter> sseEmitters) {
+    if (sseEmitters == null || sseEmitters.isEmpty()) {
+      throw new IllegalArgumentException("sseEmitters is null or empty");
+    }
+    return dispatcher.dispatch(sseEmitters, frame);
+  }
+
+  /**
+   * Emit the event to a single SSE emitter without waiting for the send to finish
+   *
+   * @param sseEmitter The SSE emitter
+   * @return A future that completes with the outcome of the SSE emitter
+   */
+  public CompletableFuture<EmitResult> emitAsync(SseEmitter sseEmitter) {
+    if (sseEmitter == null) {
+      throw new IllegalArgumentException("sseEmitter is null");
+    }
+    return dispatcher.dispatch(Set.of(sseEmitter), frame);
+  }
+
+  /**
+   * Emit the event to all SSE emitters registered under a topic without waiting for the sends to
+   * finish
+   *
+   * @param topic The topic registered with {@link DatastarConnections}
+   * @return A future that completes with the outcome per SSE emitter
+   */
+  public CompletableFuture<EmitResult> emitAsync(String topic) {
+    if (topic == null || topic.isBlank()) {
+      throw new IllegalArgumentException("topic is null or empty");
+    }
+    return dispatcher.dispatch(topic, frame);
+  }
+}
@@ -0,0 +1,49 @@
+package io.github.gadnex.jtedatastar;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import reactor.core.publisher.Flux;
+
+/**
+ * Creates {@link FluxSseEmitter} connections for Spring WebFlux applications and registers them
+ * with {@link DatastarConnections}. Auto-configured for reactive web applications, which have to be
+ * selected with {@code spring.main.web-application-type=reactive} because the starter also brings
+ * in Spring Web MVC.
+ */
+public class ReactiveDatastarConnections {
+
+  private final DatastarConnections connections;
+  private final int bufferSize;
+
+  /**
+   * Constructor
+   *
+   * @param connections The registry the connections are registered with
+   * @param bufferSize The number of events buffered per client that has not read them yet
+   */
+  public ReactiveDatastarConnections(DatastarConnections connections, int bufferSize) {
+    this.connections = connections;
+    this.bufferSize = bufferSize;
+  }
+
+  /**
+   * Create an SSE emitter that publishes its events as a Flux, without registering it
+   *
+   * @return The SSE emitter
+   */
+  public FluxSseEmitter create() {
+    return new FluxSseEmitter(bufferSize);
+  }
+
+  /**
+   * Create an SSE emitter, register it under a topic and return its events, to be returned from a
+   * WebFlux controller method that produces {@code text/event-stream}
+   *
+   * @param topic The topic
+   * @return The events sent to the connection
+   */
+  public Flux<DataBuffer> connect(String topic) {
+    FluxSseEmitter sseEmitter = create();
+    connections.register(topic, sseEmitter);
+    return sseEmitter.flux();
+  }
+}
@@ -0,0 +1,186 @@
+package io.github.gadnex.jtedatastar;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * A bounded cache of rendered PatchElements fragments, shared by all PatchElements created by the
+ * {@link Datastar} bean.
+ *
+ * <p>Only PatchElements that opt in with {@link PatchElements#cacheKey(Object)} or {@link
+ * PatchElements#cached()} use the cache. Entries are keyed by template name, cache key and locale.
+ * The least recently used entry is evicted when the cache is full, and entries expire after the
+ * configured time to live.
+ */
+public final class RenderCache {
+
+  private final int maxEntries;
+  private final long timeToLiveNanos;
+  private final LinkedHashMap<Key, Entry> entries;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  /**
+   * Constructor
+   *
+   * @param maxEntries The maximum number of cached fragments, or 0 to disable the cache
+   * @param timeToLive How long a rendered fragment stays cached, or zero for no expiry
+   */
+  public RenderCache(int maxEntries, Duration timeToLive) {
+    if (maxEntries < 0) {
+      throw new IllegalArgumentException("maxEntries must not be negative");
+    }
+    if (timeToLive.isNegative()) {
+      throw new IllegalArgumentException("timeToLive must not be negative");
+    }
+    this.maxEntries = maxEntries;
+    this.timeToLiveNanos = timeToLive.toNanos();
+    this.entries =
+        new LinkedHashMap<>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+            if (size() > RenderCache.this.maxEntries) {
+              evictions.increment();
+              return true;
+            }
+            return false;
+          }
+        };
+  }
+
+  /**
+   * Whether fragments are cached at all
+   *
+   * @return True if the cache holds entries
+   */
+  public boolean isEnabled() {
+    return maxEntries > 0;
+  }
+
+  /**
+   * Remove all cached fragments of a template
+   *
+   * @param templateName The template name, as passed to {@link PatchElements#template(String)}
+   */
+  public synchronized void invalidate(String templateName) {
+    entries.keySet().removeIf(key -> key.templateName().equals(templateName));
+  }
+
+  /**
+   * Remove the cached fragments of a template and cache key, in every locale
+   *
+   * @param templateName The template name, as passed to {@link PatchElements#template(String)}
+   * @param cacheKey The cache key passed to {@link PatchElements#cacheKey(Object)}
+   */
+  public synchronized void invalidate(String templateName, Object cacheKey) {
+    entries
+        .keySet()
+        .removeIf(
+            key -> key.templateName().equals(templateName) && key.cacheKey().equals(cacheKey));
+  }
+
+  /** Remove all cached fragments */
+  public synchronized void invalidateAll() {
+    entries.clear();
+  }
+
+  /**
+   * The number of cached fragments, including expired fragments not evicted yet
+   *
+   * @return The number of cached fragments
+   */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * The number of renders served from the cache
+   *
+   * @return The number of cache hits
+   */
+  public long hits() {
+    return hits.sum();
+  }
+
+  /**
+   * The number of renders not found in the cache
+   *
+   * @return The number of cache misses
+   */
+  public long misses() {
+    return misses.sum();
+  }
+
+  /**
+   * The number of fragments removed because the cache was full or the fragment expired
+   *
+   * @return The number of evictions
+   */
+  public long evictions() {
+    return evictions.sum();
+  }
+
+  byte @Nullable [] get(Key key) {
+    if (!isEnabled()) {
+      return null;
+    }
+    synchronized (this) {
+      Entry entry = entries.get(key);
+      if (entry != null && entry.isExpired(System.nanoTime())) {
+        entries.remove(key);
+        evictions.increment();
+        entry = null;
+      }
+      if (entry == null) {
+        misses.increment();
+        return null;
+      }
+      hits.increment();
+      return entry.elements();
+    }
+  }
+
+  void put(Key key, byte[] elements) {
+    if (!isEnabled()) {
+      return;
+    }
+    long expiresAt = timeToLiveNanos == 0 ? Long.MAX_VALUE : System.nanoTime() + timeToLiveNanos;
+    synchronized (this) {
+      entries.put(key, new Entry(elements, expiresAt));
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "RenderCache{size="
+        + size()
+        + ", hits="
+        + hits()
+        + ", misses="
+        + misses()
+        + ", evictions="
+        + evictions()
+        + "}";
+  }
+
+  /** Identifies a rendered fragment */
+  record Key(String templateName, Object cacheKey, @Nullable Locale locale) {
+    Key {
+      Objects.requireNonNull(templateName);
+      Objects.requireNonNull(cacheKey);
+    }
+  }
+
+  /** A rendered fragment as its encoded SSE data lines, never modified after it is cached */
+  private record Entry(byte[] elements, long expiresAt) {
+    boolean isExpired(long now) {
+      return expiresAt != Long.MAX_VALUE && now - expiresAt >= 0;
+    }
+  }
+}
@@ -0,0 +1,58 @@
+package io.github.gadnex.jtedatastar;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * A bounded ring buffer of the most recent encoded frames emitted to a topic, used to replay the
+ * events a reconnecting client missed. Access must be synchronized on the buffer.
+ */
+final class ReplayBuffer {
+
+  private final SseFrame[] frames;
+  private int next;
+  private int size;
+
+  /**
+   * Constructor
+   *
+   * @param capacity The number of frames kept
+   */
+  ReplayBuffer(int capacity) {
+    frames = new SseFrame[capacity];
+  }
+
+  /**
+   * Add a frame, replacing the oldest frame when the buffer is full
+   *
+   * @param frame The frame
+   */
+  void append(SseFrame frame) {
+    frames[next] = frame;
+    next = (next + 1) % frames.length;
+    if (size < frames.length) {
+      size++;
+    }
+  }
+
+  /**
+   * The frames emitted after the frame with the given id, oldest first
+   *
+   * @param lastEventId The id of the last event the client received
+   * @return The missed frames, or null if the id is not in the buffer anymore
+   */
+  @Nullable List<SseFrame> since(String lastEventId) {
+    for (int age = 0; age < size; age++) {
+      int index = Math.floorMod(next - 1 - age, frames.length);
+      if (lastEventId.equals(frames[index].id())) {
+        List<SseFrame> missed = new ArrayList<>(age);
+        for (int newer = age - 1; newer >= 0; newer--) {
+          missed.add(frames[Math.floorMod(next - 1 - newer, frames.length)]);
+        }
+        return missed;
+      }
+    }
+    return null;
+  }
+}
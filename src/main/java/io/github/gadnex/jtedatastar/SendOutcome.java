@@ -0,0 +1,17 @@
+package io.github.gadnex.jtedatastar;
+
+/** The outcome of sending an event to a single SSE emitter. */
+public enum SendOutcome {
+  /** The event was written to the SSE emitter. */
+  SENT,
+  /** The event was added to the outbound queue of the connection, to be written in order. */
+  QUEUED,
+  /** The event was dropped because the outbound queue of the connection was full. */
+  DROPPED,
+  /** Writing the event failed and the SSE emitter was completed with the error. */
+  FAILED,
+  /** Writing the event did not finish within the send timeout and the SSE emitter was completed. */
+  TIMED_OUT,
+  /** The connection already received the same content for the patched target or signals. */
+  SKIPPED
+}
@@ -0,0 +1,196 @@
+package io.github.gadnex.jtedatastar;
+
+import java.util.Map;
+import org.jspecify.annotations.Nullable;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.json.JsonMapper;
+import tools.jackson.databind.node.ObjectNode;
+
+/**
+ * The signals of a PatchSignals frame, kept with the frame so that queued frames that have not been
+ * sent yet can be merged into a single frame, and so that a frame that only patches changed
+ * signals can be reduced to the signals that differ from the values last sent to a connection.
+ */
+final class SignalsPatch {
+
+  private final @Nullable Boolean onlyIfMissing;
+  private final Object signals;
+  private final JsonMapper jsonMapper;
+  private final boolean onlyChanged;
+  private volatile @Nullable ObjectNode tree;
+
+  /**
+   * Constructor
+   *
+   * @param onlyIfMissing The onlyIfMissing value of the frame, null if not specified
+   * @param signals The signals, as a map or JSON object
+   * @param jsonMapper The JSON mapper used to encode the signals
+   */
+  SignalsPatch(@Nullable Boolean onlyIfMissing, Object signals, JsonMapper jsonMapper) {
+    this(onlyIfMissing, signals, jsonMapper, false);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param onlyIfMissing The onlyIfMissing value of the frame, null if not specified
+   * @param signals The signals, as a map or JSON object
+   * @param jsonMapper The JSON mapper used to encode the signals
+   * @param onlyChanged Whether only the signals that changed for a connection are sent to it
+   */
+  SignalsPatch(
+      @Nullable Boolean onlyIfMissing, Object signals, JsonMapper jsonMapper, boolean onlyChanged) {
+    this.onlyIfMissing = onlyIfMissing;
+    this.signals = signals;
+    this.jsonMapper = jsonMapper;
+    this.onlyChanged = onlyChanged;
+  }
+
+  /**
+   * Whether only the signals that changed for a connection are sent to it
+   *
+   * @return True if the frame is reduced per connection
+   */
+  boolean onlyChanged() {
+    return onlyChanged;
+  }
+
+  /**
+   * Merge two queued PatchSignals frames into one frame that leaves the browser with the same
+   * signals as sending both frames in order. Later values win, unless both frames are
+   * onlyIfMissing, in which case earlier values win.
+   *
+   * @param earlier The frame queued first
+   * @param later The frame queued last
+   * @return The merged frame, or null if the frames cannot be merged
+   */
+  static @Nullable SseFrame coalesce(SseFrame earlier, SseFrame later) {
+    SignalsPatch first = earlier.signals();
+    SignalsPatch second = later.signals();
+    if (first == null || second == null || first.isOnlyIfMissing() != second.isOnlyIfMissing()) {
+      return null;
+    }
+    ObjectNode merged = first.tree().deepCopy();
+    if (!merge(merged, second.tree(), !second.isOnlyIfMissing())) {
+      return null;
+    }
+    return new SignalsPatch(second.onlyIfMissing, merged, second.jsonMapper).encode(later.id());
+  }
+
+  /**
+   * Apply the signals to the values last sent to a connection and return the signals that changed
+   * them. Removed signals are kept as null values, so that removing them again is not sent.
+   * Signals that are only set if missing cannot be compared, as the browser may hold values that
+   * were never sent, so they are forgotten instead.
+   *
+   * @param shadow The signal values last sent to the connection, updated in place
+   * @return The changed signals, or null if the whole frame must be sent
+   */
+  @Nullable ObjectNode applyTo(ObjectNode shadow) {
+    ObjectNode tree = tree();
+    if (isOnlyIfMissing()) {
+      for (Map.Entry<String, JsonNode> property : tree.properties()) {
+        shadow.remove(property.getKey());
+      }
+      return null;
+    }
+    ObjectNode changed = jsonMapper.createObjectNode();
+    diff(shadow, tree, changed);
+    return changed;
+  }
+
+  /**
+   * Encode the changed signals of a connection as a frame with the id of this frame
+   *
+   * @param id The id of the frame, or null if it has none
+   * @param changed The changed signals returned by {@link #applyTo(ObjectNode)}
+   * @return The frame
+   */
+  SseFrame delta(@Nullable String id, ObjectNode changed) {
+    return new SignalsPatch(onlyIfMissing, changed, jsonMapper).encode(id);
+  }
+
+  private SseFrame encode(@Nullable String id) {
+    SseFrame.Builder builder = SseFrame.builder();
+    if (id != null) {
+      builder.id(id);
+    }
+    PatchSignals.write(builder, onlyIfMissing, signals, jsonMapper);
+    return builder.signals(this).build();
+  }
+
+  private boolean isOnlyIfMissing() {
+    return onlyIfMissing != null && onlyIfMissing;
+  }
+
+  /**
+   * The signals as a JSON tree, converted once per frame and shared by all connections, so it must
+   * not be modified
+   *
+   * @return The signals
+   */
+  private ObjectNode tree() {
+    ObjectNode converted = tree;
+    if (converted == null) {
+      converted =
+          signals instanceof ObjectNode node ? node : jsonMapper.<ObjectNode>valueToTree(signals);
+      tree = converted;
+    }
+    return converted;
+  }
+
+  /**
+   * Apply the patch to the signal values last sent to a connection, and collect the signals whose
+   * value it changed. An object value patches the signals nested in it.
+   *
+   * @param shadow The signal values last sent to the connection, updated in place
+   * @param patch The patched signals, not modified
+   * @param changed The changed signals, added to
+   */
+  private static void diff(ObjectNode shadow, JsonNode patch, ObjectNode changed) {
+    for (Map.Entry<String, JsonNode> property : patch.properties()) {
+      String name = property.getKey();
+      JsonNode existing = shadow.get(name);
+      JsonNode value = property.getValue();
+      if (value.isObject()) {
+        // A signal that was not an object is replaced by the patch applied to an empty object
+        boolean replaced = existing == null || !existing.isObject();
+        ObjectNode target = replaced ? shadow.putObject(name) : (ObjectNode) existing;
+        ObjectNode nested = changed.objectNode();
+        diff(target, value, nested);
+        if (replaced || !nested.isEmpty()) {
+          changed.set(name, nested);
+        }
+      } else if (existing == null || !existing.equals(value)) {
+        shadow.set(name, value.deepCopy());
+        changed.set(name, value.deepCopy());
+      }
+    }
+  }
+
+  /**
+   * Merge the source signals into the target signals the way the browser patches them.
+   *
+   * @return false if the result cannot be expressed as a single patch, such as a signal that is
+   *     removed or set to a plain value and then patched with an object
+   */
+  private static boolean merge(ObjectNode target, JsonNode source, boolean overwrite) {
+    for (Map.Entry<String, JsonNode> property : source.properties()) {
+      JsonNode existing = target.get(property.getKey());
+      JsonNode value = property.getValue();
+      if (existing == null) {
+        target.set(property.getKey(), value.deepCopy());
+      } else if (existing.isObject() && value.isObject()) {
+        if (!merge((ObjectNode) existing, value, overwrite)) {
+          return false;
+        }
+      } else if (overwrite) {
+        if (value.isObject()) {
+          return false;
+        }
+        target.set(property.getKey(), value.deepCopy());
+      }
+    }
+    return true;
+  }
+}
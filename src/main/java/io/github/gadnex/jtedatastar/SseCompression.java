@@ -0,0 +1,165 @@
+package io.github.gadnex.jtedatastar;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Locale;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+import java.util.zip.Deflater;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * The content encodings supported by {@link CompressingSseEmitter}.
+ *
+ * <p>Every event is compressed into its own deflate segment that ends with a full flush. A full
+ * flush resets the compressor, so the segment does not depend on the events sent before it and the
+ * segment of a broadcast frame is compressed once and shared by all connections. The format
+ * specific header and trailer are written per connection.
+ */
+public enum SseCompression {
+
+  /** The gzip content encoding */
+  GZIP("gzip"),
+
+  /** The deflate content encoding, zlib wrapped deflate data */
+  DEFLATE("deflate");
+
+  private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+  private static final byte[] ZLIB_HEADER = {0x78, (byte) 0x9c};
+  private static final byte[] FINAL_BLOCK = {1, 0, 0, (byte) 0xff, (byte) 0xff};
+  private static final int MAX_STORED_BLOCK = 0xffff;
+
+  private final String token;
+
+  SseCompression(String token) {
+    this.token = token;
+  }
+
+  /**
+   * The value of the Content-Encoding header
+   *
+   * @return The content encoding token
+   */
+  public String token() {
+    return token;
+  }
+
+  /**
+   * Choose the content encoding from the Accept-Encoding request header, preferring gzip
+   *
+   * @param acceptEncoding The Accept-Encoding request header, or null if the request has none
+   * @return The content encoding, or null if the client accepts neither gzip nor deflate
+   */
+  public static @Nullable SseCompression negotiate(@Nullable String acceptEncoding) {
+    if (acceptEncoding == null) {
+      return null;
+    }
+    @Nullable SseCompression result = null;
+    for (String coding : acceptEncoding.split(",")) {
+      String[] parts = coding.split(";");
+      String name = parts[0].strip().toLowerCase(Locale.ROOT);
+      if (parts.length > 1 && parts[1].strip().matches("q=0(\\.0*)?")) {
+        continue;
+      }
+      if (name.equals(GZIP.token)) {
+        return GZIP;
+      }
+      if (name.equals(DEFLATE.token)) {
+        result = DEFLATE;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * The bytes written before the first segment
+   *
+   * @return The stream header
+   */
+  byte[] header() {
+    return this == GZIP ? GZIP_HEADER.clone() : ZLIB_HEADER.clone();
+  }
+
+  /**
+   * Create the checksum of the uncompressed data written in the trailer
+   *
+   * @return A new checksum
+   */
+  Checksum checksum() {
+    return this == GZIP ? new CRC32() : new Adler32();
+  }
+
+  /**
+   * The bytes that end the stream after the last segment
+   *
+   * @param checksum The checksum of all uncompressed data
+   * @param size The number of uncompressed bytes
+   * @return The final deflate block and the stream trailer
+   */
+  byte[] trailer(Checksum checksum, long size) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(FINAL_BLOCK.length + 8);
+    out.writeBytes(FINAL_BLOCK);
+    long value = checksum.getValue();
+    if (this == GZIP) {
+      writeIntLittleEndian(out, value);
+      writeIntLittleEndian(out, size);
+    } else {
+      for (int shift = 24; shift >= 0; shift -= 8) {
+        out.write((int) (value >>> shift));
+      }
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Compress bytes into a deflate segment that ends with a full flush
+   *
+   * @param bytes The bytes to compress
+   * @return The compressed segment
+   */
+  static byte[] deflate(byte[] bytes) {
+    Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    try {
+      deflater.setInput(bytes);
+      ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4 + 64);
+      byte[] buffer = new byte[Math.max(256, bytes.length / 2)];
+      int written;
+      do {
+        written = deflater.deflate(buffer, 0, buffer.length, Deflater.FULL_FLUSH);
+        out.write(buffer, 0, written);
+      } while (written == buffer.length);
+      return out.toByteArray();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  /**
+   * Wrap bytes in uncompressed deflate blocks, for events too small to be worth compressing
+   *
+   * @param bytes The bytes to wrap
+   * @return The stored segment
+   */
+  static byte[] stored(byte[] bytes) {
+    int blocks = Math.max(1, (bytes.length + MAX_STORED_BLOCK - 1) / MAX_STORED_BLOCK);
+    ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length + blocks * 5);
+    int offset = 0;
+    do {
+      int length = Math.min(MAX_STORED_BLOCK, bytes.length - offset);
+      out.write(0);
+      out.write(length);
+      out.write(length >>> 8);
+      out.write(~length);
+      out.write(~length >>> 8);
+      out.write(bytes, offset, length);
+      offset += length;
+    } while (offset < bytes.length);
+    return out.toByteArray();
+  }
+
+  private static void writeIntLittleEndian(ByteArrayOutputStream out, long value) {
+    for (int shift = 0; shift < 32; shift += 8) {
+      out.write((int) (value >>> shift));
+    }
+  }
+}
@@ -0,0 +1,199 @@
+package io.github.gadnex.jtedatastar;
+
+import gg.jte.TemplateOutput;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A JTE template output that writes the rendered HTML straight into an SSE frame as data lines.
+ *
+ * <p>Every line of HTML is trimmed and empty lines are skipped, the same as splitting the rendered
+ * template into lines, but without building the complete HTML as a string first. Whitespace inside
+ * a line is kept until the next non-whitespace character shows it is not trailing whitespace.
+ *
+ * <p>Templates minified by {@link HtmlMinifier} are written verbatim instead, so that the content
+ * of whitespace-sensitive elements such as {@code <pre>} is kept. Only leading and trailing blank
+ * lines are skipped.
+ */
+final class SseDataTemplateOutput implements TemplateOutput {
+
+  private final SseFrame.Builder event;
+  private final byte[] linePrefix;
+  private final boolean trim;
+  private byte[] whitespace = new byte[16];
+  private int whitespaceCount;
+  private boolean lineStarted;
+  private boolean contentStarted;
+  private int blankLines;
+
+  /**
+   * Constructor
+   *
+   * @param event The frame builder to write the data lines to
+   * @param prefix The text written at the start of every data line, after "data:"
+   */
+  SseDataTemplateOutput(SseFrame.Builder event, String prefix) {
+    this(event, prefix, true);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param event The frame builder to write the data lines to
+   * @param prefix The text written at the start of every data line, after "data:"
+   * @param trim Whether every line is trimmed, false to write the lines of minified templates
+   *     verbatim
+   */
+  SseDataTemplateOutput(SseFrame.Builder event, String prefix, boolean trim) {
+    this.event = event;
+    this.linePrefix = ("data:" + prefix).getBytes(StandardCharsets.UTF_8);
+    this.trim = trim;
+  }
+
+  @Override
+  public void writeContent(String value) {
+    writeContent(value, 0, value.length());
+  }
+
+  @Override
+  public void writeContent(String value, int beginIndex, int endIndex) {
+    if (!trim) {
+      writeVerbatim(value, beginIndex, endIndex);
+      return;
+    }
+    int start = beginIndex;
+    for (int i = beginIndex; i < endIndex; i++) {
+      char c = value.charAt(i);
+      if (c <= ' ') {
+        if (start < i) {
+          startText();
+          event.writeUtf8(value, start, i);
+        }
+        whitespace(c);
+        start = i + 1;
+      }
+    }
+    if (start < endIndex) {
+      startText();
+      event.writeUtf8(value, start, endIndex);
+    }
+  }
+
+  @Override
+  public void writeBinaryContent(byte[] value) {
+    if (!trim) {
+      writeVerbatim(value);
+      return;
+    }
+    // UTF-8 never uses bytes up to a space inside a multibyte character
+    int start = 0;
+    for (int i = 0; i < value.length; i++) {
+      int b = value[i] & 0xFF;
+      if (b <= ' ') {
+        if (start < i) {
+          startText();
+          event.write(value, start, i - start);
+        }
+        whitespace(b);
+        start = i + 1;
+      }
+    }
+    if (start < value.length) {
+      startText();
+      event.write(value, start, value.length - start);
+    }
+  }
+
+  /** Terminate the last data line, called after the template has been rendered */
+  void finish() {
+    if (lineStarted) {
+      event.writeByte('\n');
+      lineStarted = false;
+    }
+    whitespaceCount = 0;
+    blankLines = 0;
+  }
+
+  private void writeVerbatim(String value, int beginIndex, int endIndex) {
+    int start = beginIndex;
+    for (int i = beginIndex; i < endIndex; i++) {
+      char c = value.charAt(i);
+      if (c == '\n' || c == '\r') {
+        if (start < i) {
+          startLine();
+          event.writeUtf8(value, start, i);
+        }
+        lineBreak(c);
+        start = i + 1;
+      }
+    }
+    if (start < endIndex) {
+      startLine();
+      event.writeUtf8(value, start, endIndex);
+    }
+  }
+
+  private void writeVerbatim(byte[] value) {
+    int start = 0;
+    for (int i = 0; i < value.length; i++) {
+      if (value[i] == '\n' || value[i] == '\r') {
+        if (start < i) {
+          startLine();
+          event.write(value, start, i - start);
+        }
+        lineBreak(value[i]);
+        start = i + 1;
+      }
+    }
+    if (start < value.length) {
+      startLine();
+      event.write(value, start, value.length - start);
+    }
+  }
+
+  private void startLine() {
+    if (!lineStarted) {
+      // Blank lines are only written once content follows them
+      for (; blankLines > 0; blankLines--) {
+        event.write(linePrefix, 0, linePrefix.length);
+        event.writeByte('\n');
+      }
+      event.write(linePrefix, 0, linePrefix.length);
+      lineStarted = true;
+      contentStarted = true;
+    }
+  }
+
+  private void lineBreak(int c) {
+    if (c == '\r') {
+      return;
+    }
+    if (lineStarted) {
+      event.writeByte('\n');
+      lineStarted = false;
+    } else if (contentStarted) {
+      blankLines++;
+    }
+  }
+
+  private void startText() {
+    if (!lineStarted) {
+      event.write(linePrefix, 0, linePrefix.length);
+      lineStarted = true;
+    } else if (whitespaceCount > 0) {
+      event.write(whitespace, 0, whitespaceCount);
+    }
+    whitespaceCount = 0;
+  }
+
+  private void whitespace(int c) {
+    if (c == '\n' || c == '\r') {
+      finish();
+    } else if (lineStarted) {
+      if (whitespaceCount == whitespace.length) {
+        whitespace = Arrays.copyOf(whitespace, whitespace.length * 2);
+      }
+      whitespace[whitespaceCount++] = (byte) c;
+    }
+  }
+}
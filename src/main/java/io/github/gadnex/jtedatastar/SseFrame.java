@@ -0,0 +1,547 @@
+package io.github.gadnex.jtedatastar;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import org.jspecify.annotations.Nullable;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * An immutable Server Sent Event (SSE) frame that has already been encoded to UTF-8 bytes.
+ *
+ * <p>A frame is encoded once per emit and the same bytes are written to every SSE emitter the
+ * event is sent to, so broadcasting to many emitters does not serialize the event more than once.
+ */
+public final class SseFrame {
+
+  private final byte[] bytes;
+  private final @Nullable String id;
+  private final @Nullable String name;
+  private final @Nullable String coalesceKey;
+  private final @Nullable SignalsPatch signals;
+  private final @Nullable String target;
+  private final @Nullable Long fingerprint;
+  private final boolean untracked;
+  private final SseEmitter.SseEventBuilder event;
+  private volatile byte @Nullable [] deflated;
+
+  private SseFrame(
+      byte[] bytes,
+      @Nullable String id,
+      @Nullable String name,
+      @Nullable String coalesceKey,
+      @Nullable SignalsPatch signals,
+      @Nullable String target,
+      @Nullable Long fingerprint,
+      boolean untracked) {
+    this.bytes = bytes;
+    this.id = id;
+    this.name = name;
+    this.coalesceKey = coalesceKey;
+    this.signals = signals;
+    this.target = target;
+    this.fingerprint = fingerprint;
+    this.untracked = untracked;
+    this.event =
+        new EncodedEvent(
+            this, Set.of(new ResponseBodyEmitter.DataWithMediaType(bytes, MediaType.TEXT_PLAIN)));
+  }
+
+  /**
+   * The number of encoded bytes in the frame
+   *
+   * @return The frame size in bytes
+   */
+  public int size() {
+    return bytes.length;
+  }
+
+  /**
+   * Write the encoded frame to an output stream
+   *
+   * @param outputStream The output stream to write to
+   * @throws IOException If the frame could not be written
+   */
+  public void writeTo(OutputStream outputStream) throws IOException {
+    outputStream.write(bytes);
+  }
+
+  /**
+   * The id of the event in the frame
+   *
+   * @return The event id, or null if the frame has no id
+   */
+  @Nullable String id() {
+    return id;
+  }
+
+  /**
+   * The event type of the event in the frame, such as datastar-patch-elements
+   *
+   * @return The event type, or null if the frame has no event line
+   */
+  @Nullable String name() {
+    return name;
+  }
+
+  /**
+   * The signals of a PatchSignals frame, used to merge queued frames
+   *
+   * @return The signals, or null if the frame is not a PatchSignals frame
+   */
+  @Nullable SignalsPatch signals() {
+    return signals;
+  }
+
+  /**
+   * Key shared by frames that supersede each other, such as patches of the same selector
+   *
+   * @return The coalesce key, or null if the frame never supersedes another frame
+   */
+  @Nullable String coalesceKey() {
+    return coalesceKey;
+  }
+
+  /**
+   * The element or selector patched by a PatchElements frame, used to skip unchanged fragments
+   *
+   * @return The patched target, or null if the frame does not patch elements
+   */
+  @Nullable String target() {
+    return target;
+  }
+
+  /**
+   * Hash of the frame content without the event id, set when the frame is not sent to connections
+   * that already received the same content for the same target
+   *
+   * @return The fingerprint, or null if the frame is always sent
+   */
+  @Nullable Long fingerprint() {
+    return fingerprint;
+  }
+
+  /**
+   * Whether the frame may patch targets or signals without carrying them, such as a joined frame or
+   * a frame encoded on another node, so that connections forget the content they received
+   *
+   * @return True if connections forget the content they received
+   */
+  boolean untracked() {
+    return untracked;
+  }
+
+  /**
+   * The frame as an SSE event builder that can be passed to {@link SseEmitter#send(
+   * SseEmitter.SseEventBuilder)}. The same builder instance is shared by every send.
+   */
+  SseEmitter.SseEventBuilder event() {
+    return event;
+  }
+
+  /**
+   * The encoded bytes of the frame, which must not be modified
+   *
+   * @return The encoded bytes
+   */
+  byte[] bytes() {
+    return bytes;
+  }
+
+  /**
+   * The frame compressed into a deflate segment that ends with a full flush. The segment is
+   * compressed once and shared by every connection the frame is sent to.
+   *
+   * @return The compressed segment, which must not be modified
+   */
+  byte[] deflated() {
+    byte[] segment = deflated;
+    if (segment == null) {
+      segment = SseCompression.deflate(bytes);
+      deflated = segment;
+    }
+    return segment;
+  }
+
+  /**
+   * The frame of an SSE event builder returned by {@link #event()}
+   *
+   * @param event The SSE event builder
+   * @return The frame, or null if the event was not encoded into a frame
+   */
+  static @Nullable SseFrame of(SseEmitter.SseEventBuilder event) {
+    return event instanceof EncodedEvent encoded ? encoded.frame() : null;
+  }
+
+  @Override
+  public String toString() {
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Recreate a frame from bytes that were encoded on another node
+   *
+   * @param bytes The encoded frame
+   * @param id The event id, or null if the frame has no id
+   * @param name The event type, or null if the frame has no event line
+   * @param coalesceKey The coalesce key, or null if the frame never supersedes another frame
+   * @return The frame
+   */
+  static SseFrame decoded(
+      byte[] bytes, @Nullable String id, @Nullable String name, @Nullable String coalesceKey) {
+    return new SseFrame(bytes, id, name, coalesceKey, null, null, null, true);
+  }
+
+  /**
+   * Join several frames into one frame that is written with a single send, keeping the events and
+   * their ids in order. The joined frame has the id of the last event with an id and is never
+   * coalesced with other frames. Connections forget the content they received when the joined frame
+   * patches targets or signals.
+   *
+   * @param frames The frames to join
+   * @return The joined frame
+   */
+  static SseFrame join(List<SseFrame> frames) {
+    int size = 0;
+    @Nullable String lastId = null;
+    boolean untracked = false;
+    for (SseFrame frame : frames) {
+      size += frame.bytes.length;
+      if (frame.id != null) {
+        lastId = frame.id;
+      }
+      untracked |= frame.untracked || frame.signals != null || frame.target != null;
+    }
+    byte[] bytes = new byte[size];
+    int offset = 0;
+    for (SseFrame frame : frames) {
+      System.arraycopy(frame.bytes, 0, bytes, offset, frame.bytes.length);
+      offset += frame.bytes.length;
+    }
+    return new SseFrame(bytes, lastId, null, null, null, null, null, untracked);
+  }
+
+  /**
+   * Create a builder used to encode an SSE event into a frame
+   *
+   * @return The frame builder
+   */
+  static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Builder that formats the SSE event fields straight into a UTF-8 byte buffer, following the
+   * same line format as {@link SseEmitter#event()}.
+   */
+  public static final class Builder {
+
+    private static final byte[] ID = "id:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] EVENT = "event:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] DATA = "data:".getBytes(StandardCharsets.US_ASCII);
+
+    private byte[] buffer = new byte[256];
+    private int count;
+    private @Nullable String id;
+    private @Nullable String name;
+    private @Nullable String coalesceKey;
+    private @Nullable SignalsPatch signals;
+    private @Nullable String target;
+    private int fingerprintStart = -1;
+
+    private Builder() {}
+
+    /**
+     * Add an SSE "id" line
+     *
+     * @param id The event id
+     * @return The builder
+     */
+    public Builder id(String id) {
+      this.id = id;
+      return line(ID, id);
+    }
+
+    /**
+     * Add an SSE "event" line
+     *
+     * @param name The event name
+     * @return The builder
+     */
+    public Builder name(String name) {
+      this.name = name.strip();
+      return line(EVENT, name);
+    }
+
+    /**
+     * Add an SSE comment line, which is ignored by the browser
+     *
+     * @param comment The comment text
+     * @return The builder
+     */
+    public Builder comment(String comment) {
+      writeByte(':');
+      writeUtf8(comment, 0, comment.length());
+      return writeByte('\n');
+    }
+
+    /**
+     * Add an SSE "data" line. Line breaks in the data are continued as additional "data" lines.
+     *
+     * @param data The data to add
+     * @return The builder
+     */
+    public Builder data(String data) {
+      write(DATA);
+      int start = 0;
+      int newline;
+      while ((newline = data.indexOf('\n', start)) != -1) {
+        writeUtf8(data, start, newline + 1);
+        write(DATA);
+        start = newline + 1;
+      }
+      writeUtf8(data, start, data.length());
+      return writeByte('\n');
+    }
+
+    /**
+     * Open an SSE "data" line that bytes can be written to directly, such as UTF-8 JSON written by
+     * a serializer, without building an intermediate string. Line breaks in the written bytes are
+     * continued as additional "data" lines starting with the same prefix and carriage returns are
+     * dropped. The line is terminated when the stream is closed.
+     *
+     * @param prefix The text written at the start of every data line, after "data:"
+     * @return The stream to write the data to
+     */
+    OutputStream dataStream(String prefix) {
+      return new DataLineOutputStream(prefix);
+    }
+
+    /**
+     * Mark the frame as superseding earlier queued frames with the same key
+     *
+     * @param coalesceKey The coalesce key
+     * @return The builder
+     */
+    public Builder coalesceKey(String coalesceKey) {
+      this.coalesceKey = coalesceKey;
+      return this;
+    }
+
+    /**
+     * Attach the signals of a PatchSignals event, so that the frame can be merged with other queued
+     * PatchSignals frames
+     *
+     * @param signals The signals
+     * @return The builder
+     */
+    Builder signals(SignalsPatch signals) {
+      this.signals = signals;
+      return this;
+    }
+
+    /**
+     * Mark the element or selector patched by the frame. Connections forget the content they
+     * received for the target, unless a fingerprint is taken.
+     *
+     * @param target The patched target
+     * @param fingerprintStart The size when the content to fingerprint started, or -1 to send the
+     *     frame without a fingerprint
+     * @return The builder
+     */
+    Builder target(String target, int fingerprintStart) {
+      this.target = target;
+      this.fingerprintStart = fingerprintStart;
+      return this;
+    }
+
+    /**
+     * Terminate the event and create the immutable frame
+     *
+     * @return The encoded frame
+     */
+    public SseFrame build() {
+      @Nullable Long fingerprint = fingerprintStart < 0 ? null : fingerprint(fingerprintStart);
+      writeByte('\n');
+      return new SseFrame(
+          Arrays.copyOf(buffer, count), id, name, coalesceKey, signals, target, fingerprint, false);
+    }
+
+    private long fingerprint(int start) {
+      // 64-bit FNV-1a, a collision only skips a patch when the target received the same hash
+      long hash = 0xcbf29ce484222325L;
+      for (int i = start; i < count; i++) {
+        hash ^= buffer[i] & 0xFF;
+        hash *= 0x100000001b3L;
+      }
+      return hash;
+    }
+
+    /**
+     * The number of bytes written so far
+     *
+     * @return The current size of the encoded event
+     */
+    int size() {
+      return count;
+    }
+
+    /**
+     * Copy the bytes written since an earlier {@link #size()}
+     *
+     * @param start The size when the section started
+     * @return The encoded bytes of the section
+     */
+    byte[] bytesFrom(int start) {
+      return Arrays.copyOfRange(buffer, start, count);
+    }
+
+    private Builder line(byte[] field, String value) {
+      write(field);
+      writeUtf8(value, 0, value.length());
+      return writeByte('\n');
+    }
+
+    Builder writeByte(int b) {
+      ensureCapacity(1);
+      buffer[count++] = (byte) b;
+      return this;
+    }
+
+    void write(byte[] bytes) {
+      write(bytes, 0, bytes.length);
+    }
+
+    void write(byte[] bytes, int offset, int length) {
+      ensureCapacity(length);
+      System.arraycopy(bytes, offset, buffer, count, length);
+      count += length;
+    }
+
+    void writeUtf8(CharSequence chars, int start, int end) {
+      for (int i = start; i < end; i++) {
+        char c = chars.charAt(i);
+        ensureCapacity(4);
+        if (c < 0x80) {
+          buffer[count++] = (byte) c;
+        } else if (c < 0x800) {
+          buffer[count++] = (byte) (0xC0 | (c >> 6));
+          buffer[count++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c)
+            && i + 1 < end
+            && Character.isLowSurrogate(chars.charAt(i + 1))) {
+          int codePoint = Character.toCodePoint(c, chars.charAt(++i));
+          buffer[count++] = (byte) (0xF0 | (codePoint >> 18));
+          buffer[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+          buffer[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+          buffer[count++] = (byte) (0x80 | (codePoint & 0x3F));
+        } else if (Character.isSurrogate(c)) {
+          buffer[count++] = (byte) '?';
+        } else {
+          buffer[count++] = (byte) (0xE0 | (c >> 12));
+          buffer[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+          buffer[count++] = (byte) (0x80 | (c & 0x3F));
+        }
+      }
+    }
+
+    private void ensureCapacity(int additional) {
+      if (count + additional > buffer.length) {
+        buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, count + additional));
+      }
+    }
+
+    /** Writes bytes into the frame buffer as one or more data lines with a common prefix */
+    private final class DataLineOutputStream extends OutputStream {
+
+      private final byte[] linePrefix;
+      private boolean closed;
+
+      private DataLineOutputStream(String prefix) {
+        linePrefix = ("data:" + prefix).getBytes(StandardCharsets.UTF_8);
+        Builder.this.write(linePrefix);
+      }
+
+      @Override
+      public void write(int b) {
+        if (b == '\n') {
+          writeByte('\n');
+          Builder.this.write(linePrefix);
+        } else if (b != '\r') {
+          writeByte(b);
+        }
+      }
+
+      @Override
+      public void write(byte[] bytes, int offset, int length) {
+        int start = offset;
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+          if (bytes[i] == '\n' || bytes[i] == '\r') {
+            append(bytes, start, i);
+            write(bytes[i]);
+            start = i + 1;
+          }
+        }
+        append(bytes, start, end);
+      }
+
+      @Override
+      public void close() {
+        if (!closed) {
+          closed = true;
+          writeByte('\n');
+        }
+      }
+
+      private void append(byte[] bytes, int start, int end) {
+        Builder.this.write(bytes, start, end - start);
+      }
+    }
+  }
+
+  /** Read-only SSE event builder that hands the already encoded frame to the SSE emitter */
+  private record EncodedEvent(SseFrame frame, Set<ResponseBodyEmitter.DataWithMediaType> data)
+      implements SseEmitter.SseEventBuilder {
+
+    @Override
+    public SseEmitter.SseEventBuilder comment(String comment) {
+      throw new UnsupportedOperationException("The SSE frame is already encoded");
+    }
+
+    @Override
+    public SseEmitter.SseEventBuilder name(String eventName) {
+      throw new UnsupportedOperationException("The SSE frame is already encoded");
+    }
+
+    @Override
+    public SseEmitter.SseEventBuilder id(String id) {
+      throw new UnsupportedOperationException("The SSE frame is already encoded");
+    }
+
+    @Override
+    public SseEmitter.SseEventBuilder reconnectTime(long reconnectTimeMillis) {
+      throw new UnsupportedOperationException("The SSE frame is already encoded");
+    }
+
+    @Override
+    public SseEmitter.SseEventBuilder data(Object object) {
+      throw new UnsupportedOperationException("The SSE frame is already encoded");
+    }
+
+    @Override
+    public SseEmitter.SseEventBuilder data(Object object, @Nullable MediaType mediaType) {
+      throw new UnsupportedOperationException("The SSE frame is already encoded");
+    }
+
+    @Override
+    public Set<ResponseBodyEmitter.DataWithMediaType> build() {
+      return data;
+    }
+  }
+}
@@ -0,0 +1,82 @@
+package io.github.gadnex.jtedatastar;
+
+import static org.mockito.Mockito.mock;
+
+import gg.jte.TemplateEngine;
+import java.time.Duration;
+import java.util.Locale;
+import org.assertj.core.api.WithAssertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.support.StaticMessageSource;
+
+class CachingMessageSourceTest implements WithAssertions {
+
+  private final StaticMessageSource messages = new StaticMessageSource();
+
+  @Test
+  void localizerIsSharedPerLocale() {
+    var cached = new CachingMessageSource(messages, null);
+
+    assertThat(cached.localizer(Locale.ENGLISH))
+        .isSameAs(cached.localizer(Locale.ENGLISH))
+        .isNotSameAs(cached.localizer(Locale.GERMAN));
+  }
+
+  @Test
+  void messagesAreLookedUpOnceUntilRefresh() {
+    var cached = new CachingMessageSource(messages, null);
+    messages.addMessage("greeting", Locale.ENGLISH, "Hello");
+    messages.addMessage("greeting", Locale.GERMAN, "Hallo");
+
+    assertThat(cached.localizer(Locale.ENGLISH).lookup("greeting")).isEqualTo("Hello");
+    assertThat(cached.getMessage("greeting", null, Locale.GERMAN)).isEqualTo("Hallo");
+    messages.addMessage("greeting", Locale.ENGLISH, "Hi");
+    assertThat(cached.localizer(Locale.ENGLISH).lookup("greeting")).isEqualTo("Hello");
+
+    cached.refresh();
+    assertThat(cached.localizer(Locale.ENGLISH).lookup("greeting")).isEqualTo("Hi");
+  }
+
+  @Test
+  void messagesExpireAfterCacheDuration() throws InterruptedException {
+    var cached = new CachingMessageSource(messages, Duration.ofMillis(1));
+    messages.addMessage("greeting", Locale.ENGLISH, "Hello");
+    assertThat(cached.localizer(Locale.ENGLISH).lookup("greeting")).isEqualTo("Hello");
+    messages.addMessage("greeting", Locale.ENGLISH, "Hi");
+    Thread.sleep(5);
+
+    assertThat(cached.localizer(Locale.ENGLISH).lookup("greeting")).isEqualTo("Hi");
+  }
+
+  @Test
+  void zeroCacheDurationLooksUpEveryMessage() {
+    var cached = new CachingMessageSource(messages, Duration.ZERO);
+    messages.addMessage("greeting", Locale.ENGLISH, "Hello");
+    assertThat(cached.localizer(Locale.ENGLISH).lookup("greeting")).isEqualTo("Hello");
+    messages.addMessage("greeting", Locale.ENGLISH, "Hi");
+
+    assertThat(cached.localizer(Locale.ENGLISH).lookup("greeting")).isEqualTo("Hi");
+    assertThat(cached.getMessage("greeting", null, Locale.ENGLISH)).isEqualTo("Hi");
+  }
+
+  @Test
+  void messagesWithArgumentsAreNotCached() {
+    var cached = new CachingMessageSource(messages, null);
+    messages.addMessage("welcome", Locale.ENGLISH, "Welcome {0}");
+
+    assertThat(cached.getMessage("welcome", new Object[] {"John"}, Locale.ENGLISH))
+        .isEqualTo("Welcome John");
+  }
+
+  @Test
+  void datastarRefreshesMessages() {
+    var cached = new CachingMessageSource(messages, null);
+    var datastar = new Datastar(mock(TemplateEngine.class), ".jte", cached);
+    messages.addMessage("greeting", Locale.ENGLISH, "Hello");
+    assertThat(cached.localizer(Locale.ENGLISH).lookup("greeting")).isEqualTo("Hello");
+    messages.addMessage("greeting", Locale.ENGLISH, "Hi");
+
+    datastar.refreshMessages();
+    assertThat(cached.localizer(Locale.ENGLISH).lookup("greeting")).isEqualTo("Hi");
+  }
+}
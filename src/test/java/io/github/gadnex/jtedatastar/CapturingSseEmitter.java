@@ -1,21 +1,32 @@
 package io.github.gadnex.jtedatastar;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Set;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 public class CapturingSseEmitter extends SseEmitter {
   private final StringBuilder emittedData = new StringBuilder();
+  private int sendCount;
 
   @Override
   public void send(SseEmitter.SseEventBuilder eventBuilder) throws IOException {
+    sendCount++;
     Set<SseEmitter.DataWithMediaType> dataSet = eventBuilder.build();
     for (SseEmitter.DataWithMediaType data : dataSet) {
-      emittedData.append(data.getData().toString());
+      if (data.getData() instanceof byte[] bytes) {
+        emittedData.append(new String(bytes, StandardCharsets.UTF_8));
+      } else {
+        emittedData.append(data.getData().toString());
+      }
     }
   }
 
   public String getEmittedData() {
     return emittedData.toString();
   }
+
+  public int getSendCount() {
+    return sendCount;
+  }
 }
@@ -0,0 +1,96 @@
+package io.github.gadnex.jtedatastar;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+import org.assertj.core.api.WithAssertions;
+import org.junit.jupiter.api.Test;
+
+class CompressingSseEmitterTest implements WithAssertions {
+
+  @Test
+  void gzipStream() throws IOException {
+    CapturingCompressingSseEmitter emitter =
+        new CapturingCompressingSseEmitter(SseCompression.GZIP);
+    SseFrame small = SseFrame.builder().name(" test").data(" hello").build();
+    SseFrame large = SseFrame.builder().name(" test").data(" hello ".repeat(200)).build();
+
+    emitter.send(small.event());
+    emitter.send(large.event());
+    emitter.complete();
+
+    InputStream in = new GZIPInputStream(new ByteArrayInputStream(emitter.bytes()));
+    assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8))
+        .isEqualTo(small.toString() + large);
+    assertThat(emitter.bytes().length).isLessThan(large.size());
+  }
+
+  @Test
+  void deflateStream() throws IOException {
+    CapturingCompressingSseEmitter emitter =
+        new CapturingCompressingSseEmitter(SseCompression.DEFLATE);
+    SseFrame frame = SseFrame.builder().name(" test").data(" hello ".repeat(200)).build();
+
+    emitter.send(frame.event());
+    emitter.complete();
+
+    InputStream in = new InflaterInputStream(new ByteArrayInputStream(emitter.bytes()));
+    assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo(frame.toString());
+  }
+
+  @Test
+  void eventCanBeDecompressedBeforeTheStreamEnds() throws IOException {
+    CapturingCompressingSseEmitter emitter =
+        new CapturingCompressingSseEmitter(SseCompression.GZIP);
+    SseFrame frame = SseFrame.builder().name(" test").data(" hello ".repeat(200)).build();
+
+    emitter.send(frame.event());
+
+    InputStream in = new GZIPInputStream(new ByteArrayInputStream(emitter.bytes()));
+    byte[] decompressed = in.readNBytes(frame.size());
+    assertThat(new String(decompressed, StandardCharsets.UTF_8)).isEqualTo(frame.toString());
+  }
+
+  @Test
+  void broadcastFrameIsCompressedOnce() {
+    SseFrame frame = SseFrame.builder().name(" test").data(" hello ".repeat(200)).build();
+
+    assertThat(frame.deflated()).isSameAs(frame.deflated());
+  }
+
+  @Test
+  void negotiate() {
+    assertThat(SseCompression.negotiate("gzip, deflate, br")).isEqualTo(SseCompression.GZIP);
+    assertThat(SseCompression.negotiate("deflate")).isEqualTo(SseCompression.DEFLATE);
+    assertThat(SseCompression.negotiate("gzip;q=0, deflate")).isEqualTo(SseCompression.DEFLATE);
+    assertThat(SseCompression.negotiate("br")).isNull();
+    assertThat(SseCompression.negotiate(null)).isNull();
+    assertThat(CompressingSseEmitter.negotiate("identity", -1L))
+        .isNotInstanceOf(CompressingSseEmitter.class);
+  }
+
+  private static class CapturingCompressingSseEmitter extends CompressingSseEmitter {
+
+    private final ByteArrayOutputStream sent = new ByteArrayOutputStream();
+
+    CapturingCompressingSseEmitter(SseCompression compression) {
+      super(-1L, compression, CompressingSseEmitter.DEFAULT_MIN_SIZE);
+    }
+
+    @Override
+    public void send(Set<DataWithMediaType> items) {
+      for (DataWithMediaType item : items) {
+        sent.writeBytes((byte[]) item.getData());
+      }
+    }
+
+    byte[] bytes() {
+      return sent.toByteArray();
+    }
+  }
+}
@@ -0,0 +1,90 @@
+package io.github.gadnex.jtedatastar;
+
+import org.assertj.core.api.WithAssertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+@SpringBootTest
+class DatastarBatchTest implements WithAssertions {
+
+  @Autowired private Datastar datastar;
+
+  @Test
+  void batchIsSentOnce() {
+    CapturingSseEmitter emitter = new CapturingSseEmitter();
+    datastar
+        .batch(emitter)
+        .patchElements(patch -> patch.selector("#foo").template("Hello").attribute("name", "Foo"))
+        .patchSignals(patch -> patch.signal("count", 1))
+        .executeScript(script -> script.script("console.log('done')"))
+        .emit();
+
+    assertThat(emitter.getSendCount()).isEqualTo(1);
+    String data = emitter.getEmittedData();
+    assertThat(data.indexOf("data: elements Hello Foo!"))
+        .isLessThan(data.indexOf("data: signals {\"count\":1}"));
+    assertThat(data.indexOf("data: signals {\"count\":1}"))
+        .isLessThan(data.indexOf("data: elements console.log('done')"));
+    assertThat(data.split("id:")).hasSize(4);
+  }
+
+  @Test
+  void patchesByIdAreMerged() {
+    CapturingSseEmitter emitter = new CapturingSseEmitter();
+    datastar
+        .batch(emitter)
+        .patchElements(patch -> patch.template("Hello").attribute("name", "John"))
+        .patchElements(patch -> patch.template("Hello").attribute("name", "Jane"))
+        .emit();
+
+    String data = emitter.getEmittedData();
+    assertThat(data.split("event: datastar-patch-elements")).hasSize(2);
+    assertThat(data.indexOf("data: elements Hello John!"))
+        .isLessThan(data.indexOf("data: elements Hello Jane!"));
+  }
+
+  @Test
+  void patchesOfDifferentSelectorsAreNotMerged() {
+    CapturingSseEmitter emitter = new CapturingSseEmitter();
+    datastar
+        .batch(emitter)
+        .patchElements(patch -> patch.selector("#foo").template("Hello").attribute("name", "A"))
+        .patchElements(patch -> patch.selector("#bar").template("Hello").attribute("name", "B"))
+        .emit();
+
+    assertThat(emitter.getSendCount()).isEqualTo(1);
+    assertThat(emitter.getEmittedData().split("event: datastar-patch-elements")).hasSize(3);
+  }
+
+  @Test
+  void appendsToSameSelectorAreMerged() {
+    CapturingSseEmitter emitter = new CapturingSseEmitter();
+    datastar
+        .batch(emitter)
+        .patchElements(
+            patch ->
+                patch
+                    .selector("#list")
+                    .patchMode(PatchMode.APPEND)
+                    .template("Hello")
+                    .attribute("name", "A"))
+        .patchElements(
+            patch ->
+                patch
+                    .selector("#list")
+                    .patchMode(PatchMode.APPEND)
+                    .template("Hello")
+                    .attribute("name", "B"))
+        .emit();
+
+    assertThat(emitter.getEmittedData().split("event: datastar-patch-elements")).hasSize(2);
+  }
+
+  @Test
+  void emptyBatch() {
+    DatastarBatch batch = datastar.batch(new CapturingSseEmitter());
+
+    assertThatIllegalStateException().isThrownBy(batch::emit);
+  }
+}
@@ -0,0 +1,139 @@
+package io.github.gadnex.jtedatastar;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.assertj.core.api.WithAssertions;
+import org.junit.jupiter.api.Test;
+
+class DatastarBroadcastBusTest implements WithAssertions {
+
+  private static SseFrame frame() {
+    return SseFrame.builder().id("1").name(" test").data(" hello").build();
+  }
+
+  @Test
+  void failedPublishKeepsTheLocalResult() {
+    DatastarConnections connections = new DatastarConnections();
+    CapturingSseEmitter emitter = new CapturingSseEmitter();
+    connections.register("news", emitter);
+    DatastarBroadcastBus failing =
+        new DatastarBroadcastBus() {
+          @Override
+          public void publish(String topic, SseFrame frame) {
+            throw new UncheckedIOException(new IOException("Network is unreachable"));
+          }
+
+          @Override
+          public void subscribe(Listener listener) {}
+        };
+
+    try (EventDispatcher dispatcher = dispatcher(connections, failing)) {
+      EmitResult result = dispatcher.dispatch("news", frame()).join();
+
+      assertThat(result.count(SendOutcome.SENT)).isEqualTo(1);
+    }
+    assertThat(emitter.getEmittedData()).isEqualTo("id:1\nevent: test\ndata: hello\n\n");
+  }
+
+  @Test
+  void inProcessBusSendsToOtherNodes() {
+    DatastarConnections connections = new DatastarConnections();
+    DatastarConnections connections2 = new DatastarConnections();
+    CapturingSseEmitter emitter = new CapturingSseEmitter();
+    CapturingSseEmitter emitter2 = new CapturingSseEmitter();
+    connections.register("news", emitter);
+    connections2.register("news", emitter2);
+
+    try (InProcessBroadcastBus bus = new InProcessBroadcastBus();
+        InProcessBroadcastBus bus2 = bus.join();
+        EventDispatcher dispatcher = dispatcher(connections, bus);
+        EventDispatcher dispatcher2 = dispatcher(connections2, bus2)) {
+      EmitResult result = dispatcher.dispatch("news", frame()).join();
+
+      assertThat(result.count(SendOutcome.SENT)).isEqualTo(1);
+    }
+    assertThat(emitter.getEmittedData()).isEqualTo("id:1\nevent: test\ndata: hello\n\n");
+    assertThat(emitter2.getEmittedData()).isEqualTo(emitter.getEmittedData());
+  }
+
+  @Test
+  void framesSentToEmittersAreNotPublished() {
+    DatastarConnections connections2 = new DatastarConnections();
+    CapturingSseEmitter emitter2 = new CapturingSseEmitter();
+    connections2.register("news", emitter2);
+
+    try (InProcessBroadcastBus bus = new InProcessBroadcastBus();
+        InProcessBroadcastBus bus2 = bus.join();
+        EventDispatcher dispatcher = dispatcher(new DatastarConnections(), bus);
+        EventDispatcher dispatcher2 = dispatcher(connections2, bus2)) {
+      dispatcher.dispatch(Set.of(new CapturingSseEmitter()), frame()).join();
+    }
+    assertThat(emitter2.getEmittedData()).isEmpty();
+  }
+
+  @Test
+  void multicastBusSendsToOtherNodes() throws Exception {
+    CountDownLatch received = new CountDownLatch(1);
+    CapturingSseEmitter emitter2 =
+        new CapturingSseEmitter() {
+          @Override
+          public void send(SseEventBuilder eventBuilder) throws IOException {
+            super.send(eventBuilder);
+            received.countDown();
+          }
+        };
+    DatastarConnections connections2 = new DatastarConnections();
+    connections2.register("news", emitter2);
+    InetAddress group = InetAddress.getByName("239.255.77.1");
+
+    try (MulticastBroadcastBus bus = new MulticastBroadcastBus(group, 45_611);
+        MulticastBroadcastBus bus2 = new MulticastBroadcastBus(group, 45_611);
+        EventDispatcher dispatcher = dispatcher(new DatastarConnections(), bus);
+        EventDispatcher dispatcher2 = dispatcher(connections2, bus2)) {
+      dispatcher.dispatch("news", frame()).join();
+
+      assertThat(received.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+    assertThat(emitter2.getEmittedData()).isEqualTo("id:1\nevent: test\ndata: hello\n\n");
+  }
+
+  @Test
+  void signedMulticastBusSplitsLargeFrames() throws Exception {
+    CountDownLatch received = new CountDownLatch(1);
+    CapturingSseEmitter emitter2 =
+        new CapturingSseEmitter() {
+          @Override
+          public void send(SseEventBuilder eventBuilder) throws IOException {
+            super.send(eventBuilder);
+            received.countDown();
+          }
+        };
+    DatastarConnections connections2 = new DatastarConnections();
+    connections2.register("news", emitter2);
+    InetAddress group = InetAddress.getByName("239.255.77.2");
+    String data = " " + "x".repeat(3 * MulticastBroadcastBus.MAX_DATAGRAM_SIZE);
+
+    try (MulticastBroadcastBus unsigned = new MulticastBroadcastBus(group, 45_612);
+        MulticastBroadcastBus bus = new MulticastBroadcastBus(group, 45_612, null, "secret");
+        MulticastBroadcastBus bus2 = new MulticastBroadcastBus(group, 45_612, null, "secret");
+        EventDispatcher unsignedDispatcher = dispatcher(new DatastarConnections(), unsigned);
+        EventDispatcher dispatcher = dispatcher(new DatastarConnections(), bus);
+        EventDispatcher dispatcher2 = dispatcher(connections2, bus2)) {
+      unsignedDispatcher.dispatch("news", frame()).join();
+      dispatcher.dispatch("news", SseFrame.builder().data(data).build()).join();
+
+      assertThat(received.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+    assertThat(emitter2.getSendCount()).isEqualTo(1);
+    assertThat(emitter2.getEmittedData()).isEqualTo("data:" + data + "\n\n");
+  }
+
+  private static EventDispatcher dispatcher(
+      DatastarConnections connections, DatastarBroadcastBus bus) {
+    return EventDispatcher.builder().connections(connections).bus(bus).build();
+  }
+}
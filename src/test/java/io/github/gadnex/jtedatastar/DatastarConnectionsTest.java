@@ -0,0 +1,257 @@
+package io.github.gadnex.jtedatastar;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.assertj.core.api.WithAssertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+@SpringBootTest
+class DatastarConnectionsTest implements WithAssertions {
+
+  @Autowired private Datastar datastar;
+  @Autowired private DatastarConnections connections;
+
+  @Test
+  void registerUnderMultipleTopics() {
+    CapturingSseEmitter emitter = new CapturingSseEmitter();
+    connections.register("register-a", emitter);
+    connections.register("register-b", emitter);
+
+    assertThat(connections.emitters("register-a")).containsExactly(emitter);
+    assertThat(connections.emitters("register-b")).containsExactly(emitter);
+    assertThat(connections.connection(emitter).topics())
+        .containsExactlyInAnyOrder("register-a", "register-b");
+  }
+
+  @Test
+  void unregisterRemovesFromAllTopics() {
+    CapturingSseEmitter emitter = new CapturingSseEmitter();
+    connections.register("unregister-a", emitter);
+    connections.register("unregister-b", emitter);
+
+    connections.unregister(emitter);
+
+    assertThat(connections.emitters("unregister-a")).isEmpty();
+    assertThat(connections.emitters("unregister-b")).isEmpty();
+    assertThat(connections.topics()).doesNotContain("unregister-a", "unregister-b");
+    assertThat(connections.connection(emitter)).isNull();
+  }
+
+  @Test
+  void unsubscribeKeepsOtherTopics() {
+    CapturingSseEmitter emitter = new CapturingSseEmitter();
+    connections.register("unsubscribe-a", emitter);
+    connections.register("unsubscribe-b", emitter);
+
+    connections.unsubscribe("unsubscribe-a", emitter);
+
+    assertThat(connections.emitters("unsubscribe-a")).isEmpty();
+    assertThat(connections.emitters("unsubscribe-b")).containsExactly(emitter);
+  }
+
+  @Test
+  void patchElementsToTopic() {
+    CapturingSseEmitter emitter = new CapturingSseEmitter();
+    CapturingSseEmitter emitter2 = new CapturingSseEmitter();
+    connections.register("greetings", emitter);
+    connections.register("greetings", emitter2);
+
+    datastar.patchElements("greetings").template("Hello").attribute("name", "John").emit();
+
+    assertThat(emitter.getEmittedData()).contains("data: elements Hello John!");
+    assertThat(emitter2.getEmittedData()).contains("data: elements Hello John!");
+  }
+
+  @Test
+  void skipUnchangedFragments() {
+    CapturingSseEmitter emitter = new CapturingSseEmitter();
+    connections.register("dashboard", emitter);
+
+    assertThat(emitGreeting("dashboard", "John", true)).isEqualTo(SendOutcome.SENT);
+    assertThat(emitGreeting("dashboard", "John", true)).isEqualTo(SendOutcome.SKIPPED);
+    assertThat(emitGreeting("dashboard", "Jane", true)).isEqualTo(SendOutcome.SENT);
+    assertThat(emitGreeting("dashboard", "John", false)).isEqualTo(SendOutcome.SENT);
+    assertThat(emitGreeting("dashboard", "John", true)).isEqualTo(SendOutcome.SENT);
+    assertThat(emitter.getSendCount()).isEqualTo(4);
+  }
+
+  @Test
+  void skipUnchangedOnlyForNewConnections() {
+    CapturingSseEmitter emitter = new CapturingSseEmitter();
+    connections.register("dashboard-late", emitter);
+    emitGreeting("dashboard-late", "John", true);
+    CapturingSseEmitter late = new CapturingSseEmitter();
+    connections.register("dashboard-late", late);
+
+    EmitResult result =
+        datastar
+            .patchElements("dashboard-late")
+            .selector("#greeting")
+            .template("Hello")
+            .attribute("name", "John")
+            .skipUnchanged()
+            .emitAsync()
+            .join();
+
+    assertThat(result.outcome(emitter)).isEqualTo(SendOutcome.SKIPPED);
+    assertThat(result.outcome(late)).isEqualTo(SendOutcome.SENT);
+  }
+
+  private SendOutcome emitGreeting(String topic, String name, boolean skipUnchanged) {
+    PatchElements patch =
+        datastar
+            .patchElements(connections.emitters(topic))
+            .selector("#greeting")
+            .template("Hello")
+            .attribute("name", name);
+    if (skipUnchanged) {
+      patch.skipUnchanged();
+    }
+    return patch.emitAsync().join().outcomes().values().iterator().next();
+  }
+
+  @Test
+  void sendOnlyChangedSignals() {
+    CapturingSseEmitter emitter = new CapturingSseEmitter();
+    connections.register("ticker", emitter);
+
+    assertThat(emitPrice("ticker", 10, 5).outcome(emitter)).isEqualTo(SendOutcome.SENT);
+    int sent = emitter.getEmittedData().length();
+    assertThat(emitPrice("ticker", 10, 6).outcome(emitter)).isEqualTo(SendOutcome.SENT);
+    assertThat(emitter.getEmittedData().substring(sent))
+        .contains("\"volume\":6")
+        .doesNotContain("price");
+    assertThat(emitPrice("ticker", 10, 6).outcome(emitter)).isEqualTo(SendOutcome.SKIPPED);
+
+    CapturingSseEmitter late = new CapturingSseEmitter();
+    connections.register("ticker", late);
+    EmitResult removed =
+        datastar.patchSignals("ticker").signal("price", null).onlyChanged().emitAsync().join();
+    assertThat(removed.outcome(emitter)).isEqualTo(SendOutcome.SENT);
+    assertThat(removed.outcome(late)).isEqualTo(SendOutcome.SENT);
+    assertThat(emitPrice("ticker", null, 6).outcome(emitter)).isEqualTo(SendOutcome.SKIPPED);
+  }
+
+  private EmitResult emitPrice(String topic, Integer price, int volume) {
+    return datastar
+        .patchSignals(topic)
+        .signal("price", price)
+        .signal("volume", volume)
+        .onlyChanged()
+        .emitAsync()
+        .join();
+  }
+
+  @Test
+  void emitToTopicWithoutEmitters() {
+    assertThatNoException()
+        .isThrownBy(() -> datastar.patchSignals("nobody-listening").signal("foo", 1).emit());
+  }
+
+  @Test
+  void failedSendUnregisters() {
+    SseEmitter failing =
+        new SseEmitter() {
+          @Override
+          public void send(SseEventBuilder eventBuilder) throws IOException {
+            throw new IOException("Broken pipe");
+          }
+        };
+    CapturingSseEmitter emitter = new CapturingSseEmitter();
+    connections.register("failing", failing);
+    connections.register("failing", emitter);
+
+    datastar.patchSignals("failing").signal("foo", 1).emit();
+
+    assertThat(connections.emitters("failing")).containsExactly(emitter);
+    assertThat(connections.connection(failing)).isNull();
+  }
+
+  @Test
+  void resumeReplaysMissedEvents() {
+    DatastarConnections replaying = DatastarConnections.builder().replayCapacity(4).build();
+    EventDispatcher dispatcher = EventDispatcher.builder().connections(replaying).build();
+    CapturingSseEmitter emitter = new CapturingSseEmitter();
+    replaying.register("replay", emitter);
+    emitTopic(dispatcher, "one");
+    String lastEventId = lastEventId(emitter.getEmittedData());
+    replaying.unregister(emitter);
+    emitTopic(dispatcher, "two");
+    emitTopic(dispatcher, "three");
+
+    CapturingSseEmitter reconnected = new CapturingSseEmitter();
+    assertThat(replaying.resume("replay", reconnected, lastEventId)).isTrue();
+    emitTopic(dispatcher, "four");
+
+    assertThat(reconnected.getEmittedData())
+        .doesNotContain("one")
+        .containsSubsequence("data: two", "data: three", "data: four");
+  }
+
+  @Test
+  void resumeDoesNotBlockEmittingToTheTopic() {
+    DatastarConnections replaying = DatastarConnections.builder().replayCapacity(4).build();
+    EventDispatcher dispatcher = EventDispatcher.builder().connections(replaying).build();
+    CapturingSseEmitter emitter = new CapturingSseEmitter();
+    replaying.register("replay", emitter);
+    emitTopic(dispatcher, "one");
+    String lastEventId = lastEventId(emitter.getEmittedData());
+    replaying.unregister(emitter);
+    emitTopic(dispatcher, "two");
+
+    AtomicBoolean emittedDuringReplay = new AtomicBoolean();
+    CapturingSseEmitter reconnected =
+        new CapturingSseEmitter() {
+          @Override
+          public void send(SseEventBuilder eventBuilder) throws IOException {
+            super.send(eventBuilder);
+            if (getSendCount() == 1) {
+              Thread emitting = Thread.ofPlatform().start(() -> emitTopic(dispatcher, "three"));
+              try {
+                emittedDuringReplay.set(emitting.join(Duration.ofSeconds(5)));
+              } catch (InterruptedException ex) {
+                throw new InterruptedIOException();
+              }
+            }
+          }
+        };
+    assertThat(replaying.resume("replay", reconnected, lastEventId)).isTrue();
+    emitTopic(dispatcher, "four");
+
+    assertThat(emittedDuringReplay).isTrue();
+    assertThat(reconnected.getEmittedData())
+        .containsSubsequence("data: two", "data: three", "data: four");
+  }
+
+  @Test
+  void resumeWithUnknownEventId() {
+    DatastarConnections replaying = DatastarConnections.builder().replayCapacity(1).build();
+    EventDispatcher dispatcher = EventDispatcher.builder().connections(replaying).build();
+    CapturingSseEmitter emitter = new CapturingSseEmitter();
+    replaying.register("replay", emitter);
+    emitTopic(dispatcher, "one");
+    String lastEventId = lastEventId(emitter.getEmittedData());
+    emitTopic(dispatcher, "two");
+    emitTopic(dispatcher, "three");
+
+    CapturingSseEmitter reconnected = new CapturingSseEmitter();
+    assertThat(replaying.resume("replay", reconnected, lastEventId)).isFalse();
+    assertThat(reconnected.getEmittedData()).isEmpty();
+    assertThat(replaying.emitters("replay")).contains(reconnected);
+  }
+
+  private static void emitTopic(EventDispatcher dispatcher, String data) {
+    SseFrame frame = SseFrame.builder().id(EventIds.next()).data(" " + data).build();
+    dispatcher.dispatch("replay", frame).join();
+  }
+
+  private static String lastEventId(String emittedData) {
+    int start = emittedData.lastIndexOf("id:") + "id:".length();
+    return emittedData.substring(start, emittedData.indexOf('\n', start));
+  }
+}
@@ -0,0 +1,148 @@
+package io.github.gadnex.jtedatastar;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.assertj.core.api.WithAssertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+class DatastarHeartbeatTest implements WithAssertions {
+
+  @Test
+  void everyConnectionGetsOneHeartbeatPerTurn() {
+    DatastarConnections connections = new DatastarConnections();
+    CapturingSseEmitter emitter = new CapturingSseEmitter();
+    CapturingSseEmitter emitter2 = new CapturingSseEmitter();
+    connections.register("heartbeat", emitter);
+    connections.register("heartbeat", emitter2);
+
+    try (EventDispatcher dispatcher = EventDispatcher.builder().connections(connections).build();
+        DatastarHeartbeat heartbeat =
+            new DatastarHeartbeat(connections, dispatcher, Duration.ofSeconds(15))) {
+      for (int i = 0; i < DatastarConnections.WHEEL_SLOTS; i++) {
+        heartbeat.tick().join();
+      }
+    }
+
+    assertThat(emitter.getEmittedData()).isEqualTo(":\n\n");
+    assertThat(emitter2.getEmittedData()).isEqualTo(":\n\n");
+  }
+
+  @Test
+  void failedConnectionIsRemoved() {
+    DatastarConnections connections = new DatastarConnections();
+    SseEmitter broken =
+        new SseEmitter() {
+          @Override
+          public void send(SseEventBuilder eventBuilder) throws IOException {
+            throw new IOException("Broken pipe");
+          }
+        };
+    connections.register("heartbeat", broken);
+
+    try (EventDispatcher dispatcher = EventDispatcher.builder().connections(connections).build();
+        DatastarHeartbeat heartbeat =
+            new DatastarHeartbeat(connections, dispatcher, Duration.ofSeconds(15))) {
+      for (int i = 0; i < DatastarConnections.WHEEL_SLOTS; i++) {
+        heartbeat.tick().join();
+      }
+    }
+
+    assertThat(connections.connection(broken)).isNull();
+    assertThat(connections.size()).isZero();
+  }
+
+  @Test
+  void stalledConnectionDoesNotBlockHeartbeats() throws InterruptedException {
+    DatastarConnections connections = new DatastarConnections();
+    CountDownLatch release = new CountDownLatch(1);
+    SseEmitter stalled =
+        new SseEmitter() {
+          @Override
+          public void send(SseEventBuilder eventBuilder) throws IOException {
+            try {
+              release.await();
+            } catch (InterruptedException ex) {
+              Thread.currentThread().interrupt();
+            }
+          }
+
+          @Override
+          public void completeWithError(Throwable ex) {
+            // Completing a real SseEmitter waits for the send that holds its write lock
+            try {
+              release.await();
+            } catch (InterruptedException interrupted) {
+              Thread.currentThread().interrupt();
+            }
+          }
+        };
+    CountDownLatch sent = new CountDownLatch(1);
+    CapturingSseEmitter emitter =
+        new CapturingSseEmitter() {
+          @Override
+          public void send(SseEventBuilder eventBuilder) throws IOException {
+            super.send(eventBuilder);
+            sent.countDown();
+          }
+        };
+    connections.register("heartbeat", stalled);
+    connections.register("heartbeat", emitter);
+
+    try (EventDispatcher dispatcher = EventDispatcher.builder().connections(connections).build();
+        DatastarHeartbeat heartbeat =
+            new DatastarHeartbeat(connections, dispatcher, Duration.ofSeconds(15))) {
+      for (int i = 0; i < DatastarConnections.WHEEL_SLOTS; i++) {
+        heartbeat.tick();
+      }
+      assertThat(sent.await(5, TimeUnit.SECONDS)).isTrue();
+      assertThat(connections.connection(stalled)).isNotNull();
+      // The heartbeat of the previous turn is still not sent
+      for (int i = 0; i < DatastarConnections.WHEEL_SLOTS; i++) {
+        heartbeat.tick();
+      }
+      assertThat(connections.connection(stalled)).isNull();
+      release.countDown();
+    }
+
+    assertThat(connections.connection(emitter)).isNotNull();
+  }
+
+  @Test
+  void heartbeatsAreNotRecordedInMetrics() {
+    DatastarConnections connections = new DatastarConnections();
+    connections.register("heartbeat", new CapturingSseEmitter());
+    List<SendOutcome> recorded = new CopyOnWriteArrayList<>();
+    DatastarMetrics metrics =
+        new DatastarMetrics() {
+          @Override
+          public void sent(SendOutcome outcome, int bytes, long nanos) {
+            recorded.add(outcome);
+          }
+        };
+
+    try (EventDispatcher dispatcher =
+            EventDispatcher.builder().connections(connections).metrics(metrics).build();
+        DatastarHeartbeat heartbeat =
+            new DatastarHeartbeat(connections, dispatcher, Duration.ofSeconds(15))) {
+      for (int i = 0; i < DatastarConnections.WHEEL_SLOTS; i++) {
+        heartbeat.tick().join();
+      }
+    }
+
+    assertThat(recorded).isEmpty();
+  }
+
+  @Test
+  void intervalShorterThanWheel() {
+    DatastarConnections connections = new DatastarConnections();
+    try (EventDispatcher dispatcher = new EventDispatcher()) {
+      assertThatIllegalArgumentException()
+          .isThrownBy(() -> new DatastarHeartbeat(connections, dispatcher, Duration.ofMillis(10)));
+    }
+  }
+}
@@ -0,0 +1,200 @@
+package io.github.gadnex.jtedatastar;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.assertj.core.api.WithAssertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+class EventDispatcherTest implements WithAssertions {
+
+  private static SseFrame frame() {
+    return SseFrame.builder().name(" test").data(" hello").build();
+  }
+
+  @Test
+  void callerThreadSendsToAllEmitters() {
+    CapturingSseEmitter emitter = new CapturingSseEmitter();
+    CapturingSseEmitter emitter2 = new CapturingSseEmitter();
+    try (EventDispatcher dispatcher = new EventDispatcher()) {
+      EmitResult result = dispatcher.dispatch(Set.of(emitter, emitter2), frame()).join();
+
+      assertThat(result.allSent()).isTrue();
+    }
+    assertThat(emitter.getEmittedData()).isEqualTo("event: test\ndata: hello\n\n");
+    assertThat(emitter2.getEmittedData()).isEqualTo("event: test\ndata: hello\n\n");
+  }
+
+  @Test
+  void virtualThreadsSendToAllEmitters() {
+    CapturingSseEmitter emitter = new CapturingSseEmitter();
+    CapturingSseEmitter emitter2 = new CapturingSseEmitter();
+    try (EventDispatcher dispatcher =
+        EventDispatcher.builder()
+            .fanOutMode(FanOutMode.VIRTUAL_THREADS)
+            .sendTimeout(Duration.ofSeconds(5))
+            .build()) {
+      EmitResult result = dispatcher.dispatch(Set.of(emitter, emitter2), frame()).join();
+
+      assertThat(result.count(SendOutcome.SENT)).isEqualTo(2);
+    }
+    assertThat(emitter.getEmittedData()).isEqualTo("event: test\ndata: hello\n\n");
+    assertThat(emitter2.getEmittedData()).isEqualTo("event: test\ndata: hello\n\n");
+  }
+
+  @Test
+  void boundedPoolSendsToAllEmitters() {
+    CapturingSseEmitter emitter = new CapturingSseEmitter();
+    CapturingSseEmitter emitter2 = new CapturingSseEmitter();
+    try (EventDispatcher dispatcher =
+        EventDispatcher.builder()
+            .fanOutMode(FanOutMode.BOUNDED_POOL)
+            .poolSize(2)
+            .sendTimeout(Duration.ofSeconds(5))
+            .build()) {
+      EmitResult result = dispatcher.dispatch(Set.of(emitter, emitter2), frame()).join();
+
+      assertThat(result.allSent()).isTrue();
+    }
+  }
+
+  @Test
+  void failedSendIsReported() {
+    SseEmitter failing =
+        new SseEmitter() {
+          @Override
+          public void send(SseEventBuilder eventBuilder) throws IOException {
+            throw new IOException("Broken pipe");
+          }
+        };
+    CapturingSseEmitter emitter = new CapturingSseEmitter();
+    try (EventDispatcher dispatcher = new EventDispatcher()) {
+      EmitResult result = dispatcher.dispatch(Set.of(failing, emitter), frame()).join();
+
+      assertThat(result.outcome(failing)).isEqualTo(SendOutcome.FAILED);
+      assertThat(result.outcome(emitter)).isEqualTo(SendOutcome.SENT);
+    }
+  }
+
+  @Test
+  void emittersCreatedWithoutDispatcherShareTheDefault() {
+    Set<SseEmitter> emitters = Set.of(new CapturingSseEmitter());
+
+    assertThat(new PatchSignals(emitters).dispatcher)
+        .isSameAs(new ExecuteScript(emitters).dispatcher)
+        .isSameAs(EventDispatcher.DEFAULT);
+  }
+
+  @Test
+  void slowSendTimesOut() {
+    CountDownLatch release = new CountDownLatch(1);
+    SseEmitter slow =
+        new SseEmitter() {
+          @Override
+          public void send(SseEventBuilder eventBuilder) {
+            try {
+              release.await();
+            } catch (InterruptedException ex) {
+              Thread.currentThread().interrupt();
+            }
+          }
+        };
+    CapturingSseEmitter emitter = new CapturingSseEmitter();
+    try (EventDispatcher dispatcher =
+        EventDispatcher.builder()
+            .fanOutMode(FanOutMode.VIRTUAL_THREADS)
+            .sendTimeout(Duration.ofMillis(100))
+            .build()) {
+      EmitResult result = dispatcher.dispatch(Set.of(slow, emitter), frame()).join();
+
+      assertThat(result.outcome(slow)).isEqualTo(SendOutcome.TIMED_OUT);
+      assertThat(result.outcome(emitter)).isEqualTo(SendOutcome.SENT);
+    } finally {
+      release.countDown();
+    }
+  }
+
+  @Test
+  void timedOutSendDoesNotWaitForTheStalledEmitter() {
+    CountDownLatch release = new CountDownLatch(1);
+    // Completing a real SseEmitter waits for the send that holds its write lock
+    SseEmitter slow =
+        new SseEmitter() {
+          @Override
+          public void send(SseEventBuilder eventBuilder) {
+            await(release);
+          }
+
+          @Override
+          public void completeWithError(Throwable ex) {
+            await(release);
+          }
+        };
+    try (EventDispatcher dispatcher =
+        EventDispatcher.builder()
+            .fanOutMode(FanOutMode.VIRTUAL_THREADS)
+            .sendTimeout(Duration.ofMillis(100))
+            .build()) {
+      EmitResult result =
+          dispatcher.dispatch(Set.of(slow), frame()).orTimeout(5, TimeUnit.SECONDS).join();
+
+      assertThat(result.outcome(slow)).isEqualTo(SendOutcome.TIMED_OUT);
+    } finally {
+      release.countDown();
+    }
+  }
+
+  @Test
+  void timedOutSendIsRecordedOnce() throws InterruptedException {
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch finished = new CountDownLatch(1);
+    SseEmitter slow =
+        new SseEmitter() {
+          @Override
+          public void send(SseEventBuilder eventBuilder) {
+            try {
+              release.await();
+            } catch (InterruptedException ex) {
+              Thread.currentThread().interrupt();
+            }
+            finished.countDown();
+          }
+        };
+    List<SendOutcome> recorded = new CopyOnWriteArrayList<>();
+    DatastarMetrics metrics =
+        new DatastarMetrics() {
+          @Override
+          public void sent(SendOutcome outcome, int bytes, long nanos) {
+            recorded.add(outcome);
+          }
+        };
+    try (EventDispatcher dispatcher =
+        EventDispatcher.builder()
+            .fanOutMode(FanOutMode.VIRTUAL_THREADS)
+            .sendTimeout(Duration.ofMillis(100))
+            .metrics(metrics)
+            .build()) {
+      EmitResult result = dispatcher.dispatch(Set.of(slow), frame()).join();
+      assertThat(result.outcome(slow)).isEqualTo(SendOutcome.TIMED_OUT);
+
+      release.countDown();
+      assertThat(finished.await(5, TimeUnit.SECONDS)).isTrue();
+      // Give the abandoned send the time to record its outcome
+      Thread.sleep(200);
+    }
+    assertThat(recorded).containsExactly(SendOutcome.TIMED_OUT);
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
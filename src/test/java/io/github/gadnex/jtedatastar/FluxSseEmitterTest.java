@@ -0,0 +1,58 @@
+package io.github.gadnex.jtedatastar;
+
+import java.nio.charset.StandardCharsets;
+import org.assertj.core.api.WithAssertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.buffer.DataBuffer;
+import reactor.test.StepVerifier;
+
+@SpringBootTest
+class FluxSseEmitterTest implements WithAssertions {
+
+  @Autowired private Datastar datastar;
+  @Autowired private DatastarConnections connections;
+
+  private static String text(DataBuffer dataBuffer) {
+    return dataBuffer.toString(StandardCharsets.UTF_8);
+  }
+
+  @Test
+  void patchElementsToFlux() {
+    FluxSseEmitter emitter = new FluxSseEmitter();
+    datastar.patchElements(emitter).template("Hello").attribute("name", "John").emit();
+    emitter.complete();
+
+    StepVerifier.create(emitter.flux().map(FluxSseEmitterTest::text))
+        .assertNext(
+            event ->
+                assertThat(event)
+                    .contains("event: datastar-patch-elements")
+                    .contains("data: elements Hello John!"))
+        .verifyComplete();
+  }
+
+  @Test
+  void cancelUnregisters() {
+    FluxSseEmitter emitter = new FluxSseEmitter();
+    connections.register("flux", emitter);
+
+    StepVerifier.create(emitter.flux()).thenCancel().verify();
+
+    assertThat(connections.connection(emitter)).isNull();
+  }
+
+  @Test
+  void bufferOverflowFailsSend() {
+    FluxSseEmitter emitter = new FluxSseEmitter(1);
+    connections.register("flux-overflow", emitter);
+    datastar.patchSignals("flux-overflow").signal("foo", 1).emit();
+    datastar.patchSignals("flux-overflow").signal("foo", 2).emit();
+
+    assertThat(connections.connection(emitter)).isNull();
+    StepVerifier.create(emitter.flux().map(FluxSseEmitterTest::text))
+        .assertNext(event -> assertThat(event).contains("\"foo\":1"))
+        .verifyError();
+  }
+}
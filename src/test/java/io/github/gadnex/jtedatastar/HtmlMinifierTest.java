@@ -0,0 +1,76 @@
+package io.github.gadnex.jtedatastar;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.assertj.core.api.WithAssertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class HtmlMinifierTest implements WithAssertions {
+
+  @Test
+  void collapseWhitespaceWithLineBreaks() {
+    String template =
+        """
+        @param String name
+
+        <div id="greeting">
+            <span class="a  b">Hello ${name}!</span>   \t
+        </div>
+        """;
+
+    assertThat(HtmlMinifier.minify(template))
+        .isEqualTo(
+            "@param String name\\n<div id=\\"greeting\\">\\n"
+                + "<span class=\\"a  b\\">Hello ${name}!</span>\\n</div>");
+  }
+
+  @Test
+  void keepWhitespaceSensitiveElements() {
+    String template =
+        """
+        <div>
+            <PRE class="code">
+          indented
+
+            more</PRE>
+            <textarea>
+          text
+            </textarea>
+        </div>
+        """;
+
+    assertThat(HtmlMinifier.minify(template))
+        .isEqualTo(
+            "<div>\\n<PRE class=\\"code\\">\\n  indented\\n\\n    more</PRE>\\n"
+                + "<textarea>\\n  text\\n    </textarea>\\n</div>");
+  }
+
+  @Test
+  void elementNamesStartingWithPreservedNames() {
+    assertThat(HtmlMinifier.minify("<preview>\\n  a\\n</preview>"))
+        .isEqualTo("<preview>\\na\\n</preview>");
+  }
+
+  @Test
+  void detectIndentedLines() {
+    assertThat(HtmlMinifier.isIndented("<div>\n    Hello\n</div>")).isTrue();
+    assertThat(HtmlMinifier.isIndented("<div>\nHello\n\n</div>\n")).isFalse();
+    assertThat(HtmlMinifier.isIndented("<div>\n<pre>\n  code</pre>\n</div>")).isFalse();
+    assertThat(HtmlMinifier.isIndented(HtmlMinifier.minify("<div>\n    Hello\n</div>")))
+        .isFalse();
+  }
+
+  @Test
+  void minifyDirectory(@TempDir Path source, @TempDir Path target) throws IOException {
+    Files.createDirectories(source.resolve("parts"));
+    Files.writeString(source.resolve("parts/Row.jte"), "<tr>\\n    <td>a</td>\\n</tr>\\n");
+    Files.writeString(source.resolve("notes.txt"), "  keep  \\n");
+
+    HtmlMinifier.minify(source, target);
+
+    assertThat(target.resolve("parts/Row.jte")).hasContent("<tr>\\n<td>a</td>\\n</tr>");
+    assertThat(Files.readString(target.resolve("notes.txt"))).isEqualTo("  keep  \\n");
+  }
+}
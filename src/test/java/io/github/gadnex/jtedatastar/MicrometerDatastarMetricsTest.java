@@ -0,0 +1,56 @@
+package io.github.gadnex.jtedatastar;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.util.Set;
+import org.assertj.core.api.WithAssertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+class MicrometerDatastarMetricsTest implements WithAssertions {
+
+  private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+  private final DatastarConnections connections = new DatastarConnections();
+  private final EventDispatcher dispatcher =
+      EventDispatcher.builder()
+          .connections(connections)
+          .metrics(new MicrometerDatastarMetrics(registry))
+          .build();
+
+  @Test
+  void eventsAndSends() {
+    CapturingSseEmitter emitter = new CapturingSseEmitter();
+    CapturingSseEmitter emitter2 = new CapturingSseEmitter();
+    new PatchSignals(Set.of(emitter, emitter2), dispatcher).signal("foo", 1).emit();
+
+    String type = "datastar-patch-signals";
+    assertThat(registry.get("datastar.events").tag("type", type).counter().count()).isEqualTo(1.0);
+    assertThat(registry.get("datastar.signals.serialize").timer().count()).isEqualTo(1);
+    assertThat(registry.get("datastar.send").tag("outcome", "SENT").timer().count()).isEqualTo(2);
+    assertThat(registry.get("datastar.send.bytes").summary().totalAmount())
+        .isEqualTo(2.0 * emitter.getEmittedData().length());
+  }
+
+  @Test
+  void failedSend() {
+    SseEmitter failing =
+        new SseEmitter() {
+          @Override
+          public void send(SseEventBuilder builder) throws IOException {
+            throw new IOException("Broken pipe");
+          }
+        };
+    new ExecuteScript(Set.of(failing), dispatcher).script("console.log('hi')").emit();
+
+    assertThat(registry.get("datastar.send.failures").tag("outcome", "FAILED").counter().count())
+        .isEqualTo(1.0);
+  }
+
+  @Test
+  void connectionsGauge() {
+    MicrometerDatastarMetrics.bindConnections(registry, connections);
+    connections.register("metrics", new CapturingSseEmitter());
+
+    assertThat(registry.get("datastar.connections").gauge().value()).isEqualTo(1.0);
+  }
+}
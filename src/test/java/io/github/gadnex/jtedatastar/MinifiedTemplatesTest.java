@@ -0,0 +1,20 @@
+package io.github.gadnex.jtedatastar;
+
+import org.assertj.core.api.WithAssertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+@SpringBootTest(properties = "datastar.templates.minified=true")
+class MinifiedTemplatesTest implements WithAssertions {
+
+  @Autowired private Datastar datastar;
+
+  @Test
+  void templatesCompiledAtRuntimeAreMinified() {
+    CapturingSseEmitter emitter = new CapturingSseEmitter();
+    datastar.patchElements(emitter).template("Hello").attribute("name", "John").emit();
+
+    assertThat(emitter.getEmittedData()).contains("data: elements Hello John!\n");
+  }
+}
@@ -0,0 +1,124 @@
+package io.github.gadnex.jtedatastar;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.assertj.core.api.WithAssertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+@SpringBootTest
+class NonBlockingSseEmitterTest implements WithAssertions {
+
+  @Autowired private Datastar datastar;
+  @Autowired private DatastarConnections connections;
+
+  private final MockHttpServletRequest request = new MockHttpServletRequest();
+  private final MockHttpServletResponse response = new MockHttpServletResponse();
+  private final SocketOutputStream socket = new SocketOutputStream();
+
+  NonBlockingSseEmitterTest() {
+    request.setAsyncSupported(true);
+  }
+
+  private NonBlockingSseEmitter emitter(int maxPendingBytes) throws IOException {
+    return new NonBlockingSseEmitter(
+        request,
+        new HttpServletResponseWrapper(response) {
+          @Override
+          public ServletOutputStream getOutputStream() {
+            return socket;
+          }
+        },
+        0,
+        maxPendingBytes);
+  }
+
+  @Test
+  void eventsWaitUntilTheConnectionIsWritable() throws IOException {
+    NonBlockingSseEmitter emitter = emitter(NonBlockingSseEmitter.DEFAULT_MAX_PENDING_BYTES);
+    socket.ready = false;
+    datastar.patchElements(emitter).template("Hello").attribute("name", "John").emit();
+
+    assertThat(socket.written()).isEmpty();
+    assertThat(emitter.pendingBytes()).isPositive();
+    assertThat(response.getContentType()).startsWith("text/event-stream");
+
+    socket.ready = true;
+    socket.listener.onWritePossible();
+
+    assertThat(socket.written()).contains("data: elements Hello John!");
+    assertThat(socket.flushes).isEqualTo(1);
+    assertThat(emitter.pendingBytes()).isZero();
+  }
+
+  @Test
+  void completeAfterPendingEventsUnregisters() throws IOException {
+    NonBlockingSseEmitter emitter = emitter(NonBlockingSseEmitter.DEFAULT_MAX_PENDING_BYTES);
+    connections.register("non-blocking", emitter);
+    socket.ready = false;
+    datastar.patchSignals("non-blocking").signal("foo", 1).emit();
+    emitter.complete();
+
+    assertThat(connections.connection(emitter)).isNotNull();
+    socket.ready = true;
+    socket.listener.onWritePossible();
+
+    assertThat(socket.written()).contains("\"foo\":1");
+    assertThat(connections.connection(emitter)).isNull();
+  }
+
+  @Test
+  void clientThatDoesNotReadIsDisconnected() throws IOException {
+    NonBlockingSseEmitter emitter = emitter(100);
+    connections.register("non-blocking-slow", emitter);
+    socket.ready = false;
+    datastar.patchSignals("non-blocking-slow").signal("foo", 1).emit();
+    datastar.patchSignals("non-blocking-slow").signal("foo", 2).emit();
+
+    assertThat(connections.connection(emitter)).isNull();
+    assertThat(socket.written()).isEmpty();
+  }
+
+  /** An output stream that is only writable while ready is set */
+  private static final class SocketOutputStream extends ServletOutputStream {
+
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private volatile boolean ready = true;
+    private WriteListener listener;
+    private int flushes;
+
+    @Override
+    public boolean isReady() {
+      return ready;
+    }
+
+    @Override
+    public void setWriteListener(WriteListener writeListener) {
+      this.listener = writeListener;
+    }
+
+    @Override
+    public void write(int b) {
+      if (!ready) {
+        throw new IllegalStateException("Not writable");
+      }
+      bytes.write(b);
+    }
+
+    @Override
+    public void flush() {
+      flushes++;
+    }
+
+    String written() {
+      return bytes.toString(StandardCharsets.UTF_8);
+    }
+  }
+}
@@ -0,0 +1,268 @@
+package io.github.gadnex.jtedatastar;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import org.assertj.core.api.WithAssertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+class OutboundQueueTest implements WithAssertions {
+
+  /** Captures the sent data, blocking inside the first send until released */
+  private static class BlockingSseEmitter extends CapturingSseEmitter {
+    private final CountDownLatch sending = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    private final AtomicInteger sent = new AtomicInteger();
+
+    @Override
+    public void send(SseEmitter.SseEventBuilder eventBuilder) throws IOException {
+      sending.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+      super.send(eventBuilder);
+      sent.incrementAndGet();
+    }
+  }
+
+  private static SseFrame frame(String data) {
+    return SseFrame.builder().data(" " + data).build();
+  }
+
+  private static SseFrame frame(String data, String coalesceKey) {
+    return SseFrame.builder().data(" " + data).coalesceKey(coalesceKey).build();
+  }
+
+  private static SseFrame fragment(String data) {
+    return SseFrame.builder().data(" " + data).target("#fragment", 0).build();
+  }
+
+  private static void await(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (!condition.getAsBoolean()) {
+      if (System.nanoTime() > deadline) {
+        throw new AssertionError("Condition not met within 5 seconds");
+      }
+      Thread.sleep(10);
+    }
+  }
+
+  private static SendOutcome emit(EventDispatcher dispatcher, SseEmitter emitter, SseFrame frame) {
+    return dispatcher.dispatch(Set.of(emitter), frame).join().outcome(emitter);
+  }
+
+  @Test
+  void dropNewest() throws InterruptedException {
+    DatastarConnections connections =
+        DatastarConnections.builder()
+            .queueCapacity(2)
+            .overflowPolicy(OverflowPolicy.DROP_NEWEST)
+            .build();
+    EventDispatcher dispatcher = EventDispatcher.builder().connections(connections).build();
+    BlockingSseEmitter emitter = new BlockingSseEmitter();
+    connections.register("queue", emitter);
+
+    assertThat(emit(dispatcher, emitter, frame("1"))).isEqualTo(SendOutcome.QUEUED);
+    emitter.sending.await();
+    assertThat(emit(dispatcher, emitter, frame("2"))).isEqualTo(SendOutcome.QUEUED);
+    assertThat(emit(dispatcher, emitter, frame("3"))).isEqualTo(SendOutcome.QUEUED);
+    assertThat(emit(dispatcher, emitter, frame("4"))).isEqualTo(SendOutcome.DROPPED);
+
+    DatastarConnection connection = connections.connection(emitter);
+    assertThat(connection.queueDepth()).isEqualTo(2);
+    assertThat(connection.droppedEvents()).isEqualTo(1);
+    assertThat(connection.overflows()).isEqualTo(1);
+
+    emitter.release.countDown();
+    await(() -> emitter.sent.get() == 3);
+    assertThat(emitter.getEmittedData()).isEqualTo("data: 1\n\ndata: 2\n\ndata: 3\n\n");
+    connections.unregister(emitter);
+  }
+
+  @Test
+  void dropOldest() throws InterruptedException {
+    DatastarConnections connections =
+        DatastarConnections.builder()
+            .queueCapacity(2)
+            .overflowPolicy(OverflowPolicy.DROP_OLDEST)
+            .build();
+    EventDispatcher dispatcher = EventDispatcher.builder().connections(connections).build();
+    BlockingSseEmitter emitter = new BlockingSseEmitter();
+    connections.register("queue", emitter);
+
+    emit(dispatcher, emitter, frame("1"));
+    emitter.sending.await();
+    emit(dispatcher, emitter, frame("2"));
+    emit(dispatcher, emitter, frame("3"));
+    assertThat(emit(dispatcher, emitter, frame("4"))).isEqualTo(SendOutcome.QUEUED);
+    assertThat(connections.connection(emitter).droppedEvents()).isEqualTo(1);
+
+    emitter.release.countDown();
+    await(() -> emitter.sent.get() == 3);
+    assertThat(emitter.getEmittedData()).isEqualTo("data: 1\n\ndata: 3\n\ndata: 4\n\n");
+    connections.unregister(emitter);
+  }
+
+  @Test
+  void coalesce() throws InterruptedException {
+    DatastarConnections connections =
+        DatastarConnections.builder()
+            .queueCapacity(2)
+            .overflowPolicy(OverflowPolicy.COALESCE)
+            .build();
+    EventDispatcher dispatcher = EventDispatcher.builder().connections(connections).build();
+    BlockingSseEmitter emitter = new BlockingSseEmitter();
+    connections.register("queue", emitter);
+
+    emit(dispatcher, emitter, frame("1"));
+    emitter.sending.await();
+    emit(dispatcher, emitter, frame("2", "a"));
+    emit(dispatcher, emitter, frame("3", "b"));
+    assertThat(emit(dispatcher, emitter, frame("4", "a"))).isEqualTo(SendOutcome.QUEUED);
+
+    emitter.release.countDown();
+    await(() -> emitter.sent.get() == 3);
+    // The newer patch takes the place of the patch it supersedes
+    assertThat(emitter.getEmittedData()).isEqualTo("data: 1\n\ndata: 4\n\ndata: 3\n\n");
+    connections.unregister(emitter);
+  }
+
+  @Test
+  void coalesceSignals() throws InterruptedException {
+    DatastarConnections connections =
+        DatastarConnections.builder()
+            .queueCapacity(4)
+            .overflowPolicy(OverflowPolicy.DROP_OLDEST)
+            .coalesceSignals(true)
+            .build();
+    EventDispatcher dispatcher = EventDispatcher.builder().connections(connections).build();
+    BlockingSseEmitter emitter = new BlockingSseEmitter();
+    connections.register("queue", emitter);
+
+    emit(dispatcher, emitter, frame("1"));
+    emitter.sending.await();
+    new PatchSignals(Set.of(emitter), dispatcher).signal("user", Map.of("name", "a")).emit();
+    new PatchSignals(Set.of(emitter), dispatcher).signal("user", Map.of("age", 3)).emit();
+    new PatchSignals(Set.of(emitter), dispatcher).signal("count", 1).emit();
+
+    DatastarConnection connection = connections.connection(emitter);
+    assertThat(connection.queueDepth()).isEqualTo(1);
+    assertThat(connection.coalescedEvents()).isEqualTo(2);
+
+    emitter.release.countDown();
+    await(() -> emitter.sent.get() == 2);
+    assertThat(emitter.getEmittedData())
+        .contains("data: signals {\"user\":{\"name\":\"a\",\"age\":3},\"count\":1}\n");
+    connections.unregister(emitter);
+  }
+
+  @Test
+  void onlyIfMissingSignalsAreNotMergedWithOtherSignals() throws InterruptedException {
+    DatastarConnections connections =
+        DatastarConnections.builder()
+            .queueCapacity(4)
+            .overflowPolicy(OverflowPolicy.DROP_OLDEST)
+            .coalesceSignals(true)
+            .build();
+    EventDispatcher dispatcher = EventDispatcher.builder().connections(connections).build();
+    BlockingSseEmitter emitter = new BlockingSseEmitter();
+    connections.register("queue", emitter);
+
+    emit(dispatcher, emitter, frame("1"));
+    emitter.sending.await();
+    new PatchSignals(Set.of(emitter), dispatcher).signal("count", 1).emit();
+    new PatchSignals(Set.of(emitter), dispatcher).onlyIfMissing(true).signal("count", 2).emit();
+
+    assertThat(connections.connection(emitter).queueDepth()).isEqualTo(2);
+    assertThat(connections.connection(emitter).coalescedEvents()).isZero();
+    emitter.release.countDown();
+    await(() -> emitter.sent.get() == 3);
+    connections.unregister(emitter);
+  }
+
+  @Test
+  void resendUnchangedFragmentAfterDrop() throws InterruptedException {
+    DatastarConnections connections =
+        DatastarConnections.builder()
+            .queueCapacity(1)
+            .overflowPolicy(OverflowPolicy.DROP_OLDEST)
+            .build();
+    EventDispatcher dispatcher = EventDispatcher.builder().connections(connections).build();
+    BlockingSseEmitter emitter = new BlockingSseEmitter();
+    connections.register("queue", emitter);
+
+    emit(dispatcher, emitter, frame("1"));
+    emitter.sending.await();
+    assertThat(emit(dispatcher, emitter, fragment("a"))).isEqualTo(SendOutcome.QUEUED);
+    assertThat(emit(dispatcher, emitter, frame("2"))).isEqualTo(SendOutcome.QUEUED);
+    // The dropped fragment never reached the client, so the same fragment is sent again
+    assertThat(emit(dispatcher, emitter, fragment("a"))).isEqualTo(SendOutcome.QUEUED);
+    assertThat(connections.connection(emitter).droppedEvents()).isEqualTo(2);
+
+    emitter.release.countDown();
+    await(() -> emitter.sent.get() == 2);
+    assertThat(emitter.getEmittedData()).isEqualTo("data: 1\n\ndata: a\n\n");
+    connections.unregister(emitter);
+  }
+
+  @Test
+  void disconnectAfterMaxOverflows() throws InterruptedException {
+    DatastarConnections connections =
+        DatastarConnections.builder()
+            .queueCapacity(1)
+            .overflowPolicy(OverflowPolicy.DISCONNECT)
+            .maxOverflows(2)
+            .build();
+    EventDispatcher dispatcher = EventDispatcher.builder().connections(connections).build();
+    BlockingSseEmitter emitter =
+        new BlockingSseEmitter() {
+          @Override
+          public void completeWithError(Throwable ex) {
+            // Completing a real SseEmitter waits for the send that holds its write lock
+            try {
+              release.await();
+            } catch (InterruptedException interrupted) {
+              Thread.currentThread().interrupt();
+            }
+          }
+        };
+    connections.register("queue", emitter);
+
+    emit(dispatcher, emitter, frame("1"));
+    emitter.sending.await();
+    assertThat(emit(dispatcher, emitter, frame("2"))).isEqualTo(SendOutcome.QUEUED);
+    assertThat(emit(dispatcher, emitter, frame("3"))).isEqualTo(SendOutcome.DROPPED);
+    assertThat(emit(dispatcher, emitter, frame("4"))).isEqualTo(SendOutcome.FAILED);
+    assertThat(connections.connection(emitter)).isNull();
+    emitter.release.countDown();
+  }
+
+  @Test
+  void completeAfterQueueIsDrained() throws InterruptedException {
+    DatastarConnections connections =
+        DatastarConnections.builder()
+            .queueCapacity(4)
+            .overflowPolicy(OverflowPolicy.DROP_OLDEST)
+            .build();
+    EventDispatcher dispatcher = EventDispatcher.builder().connections(connections).build();
+    BlockingSseEmitter emitter = new BlockingSseEmitter();
+    connections.register("queue", emitter);
+
+    emit(dispatcher, emitter, frame("1"));
+    emitter.sending.await();
+    emit(dispatcher, emitter, frame("2"));
+    connections.complete(emitter);
+    assertThat(emit(dispatcher, emitter, frame("3"))).isEqualTo(SendOutcome.DROPPED);
+
+    emitter.release.countDown();
+    await(() -> connections.connection(emitter) == null);
+    assertThat(emitter.getEmittedData()).isEqualTo("data: 1\n\ndata: 2\n\n");
+  }
+}
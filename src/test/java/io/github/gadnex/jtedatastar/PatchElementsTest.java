@@ -1,5 +1,13 @@
 package io.github.gadnex.jtedatastar;
 
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import gg.jte.TemplateOutput;
+import gg.jte.models.runtime.JteModel;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import org.assertj.core.api.WithAssertions;
 import org.junit.jupiter.api.Test;
@@ -25,6 +33,71 @@ class PatchElementsTest implements WithAssertions {
         .contains("data: elements </div>");
   }
 
+  @Test
+  void patchElementsWithTemplateHandle() {
+    DatastarTemplate hello = datastar.template("Hello");
+    CapturingSseEmitter emitter = new CapturingSseEmitter();
+    datastar.patchElements(emitter).template(hello).attribute("name", "John").emit();
+
+    assertThat(datastar.template("Hello")).isSameAs(hello);
+    assertThat(emitter.getEmittedData()).contains("data: elements Hello John!");
+  }
+
+  @Test
+  void missingTemplateFailsWhenResolved() {
+    assertThatRuntimeException().isThrownBy(() -> datastar.template("Missing"));
+  }
+
+  @Test
+  void preloadTemplates() {
+    assertThatNoException().isThrownBy(() -> datastar.preload(List.of("Hello"), 2));
+    assertThatRuntimeException().isThrownBy(() -> datastar.preload(List.of("Hello", "Missing"), 0));
+    assertThatNoException()
+        .isThrownBy(() -> datastar.template("Hello").warmUp(2, Map.of("name", "John")));
+  }
+
+  private static JteModel model(String html) {
+    JteModel model = mock(JteModel.class);
+    doAnswer(
+            invocation -> {
+              invocation.<TemplateOutput>getArgument(0).writeContent(html);
+              return null;
+            })
+        .when(model)
+        .render(any(TemplateOutput.class));
+    return model;
+  }
+
+  @Test
+  void patchElementsWithTemplateModel() {
+    JteModel model = model("<p>Hello Jane!</p>");
+    CapturingSseEmitter emitter = new CapturingSseEmitter();
+    datastar.patchElements(emitter).template("Greeting", model).emit();
+
+    assertThat(emitter.getEmittedData()).contains("data: elements <p>Hello Jane!</p>");
+    PatchElements cached = datastar.patchElements(emitter).template("Greeting", model).cached();
+    assertThatIllegalStateException().isThrownBy(cached::emit);
+  }
+
+  @Test
+  void templateModelsAreCachedPerTemplateName() {
+    CapturingSseEmitter emitter = new CapturingSseEmitter();
+    datastar
+        .patchElements(emitter)
+        .template("ModelGreeting", model("<p>Hello</p>"))
+        .cacheKey(1)
+        .emit();
+    datastar
+        .patchElements(emitter)
+        .template("ModelFarewell", model("<p>Goodbye</p>"))
+        .cacheKey(1)
+        .emit();
+
+    assertThat(emitter.getEmittedData())
+        .contains("data: elements <p>Hello</p>")
+        .contains("data: elements <p>Goodbye</p>");
+  }
+
   @Test
   void patchElementsMultipleEmitters() {
     CapturingSseEmitter emitter = new CapturingSseEmitter();
@@ -36,6 +109,20 @@ class PatchElementsTest implements WithAssertions {
     assertThat(emitter2.getEmittedData()).contains("data: elements Hello John!");
   }
 
+  @Test
+  void patchElementsMultipleEmittersReceiveSameFrame() {
+    CapturingSseEmitter emitter = new CapturingSseEmitter();
+    CapturingSseEmitter emitter2 = new CapturingSseEmitter();
+    CapturingSseEmitter emitter3 = new CapturingSseEmitter();
+    Set<SseEmitter> emitters = Set.of(emitter, emitter2, emitter3);
+    datastar.patchElements(emitters).template("Hello").attribute("name", "John").emit();
+
+    assertThat(emitter.getEmittedData())
+        .endsWith("data: elements </div>\n\n")
+        .isEqualTo(emitter2.getEmittedData())
+        .isEqualTo(emitter3.getEmittedData());
+  }
+
   @Test
   void selector() {
     CapturingSseEmitter emitter = new CapturingSseEmitter();
@@ -1,12 +1,18 @@
 package io.github.gadnex.jtedatastar;
 
+import static org.mockito.Mockito.mock;
+
+import gg.jte.TemplateEngine;
 import java.util.Map;
 import java.util.Set;
 import org.assertj.core.api.WithAssertions;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.support.StaticMessageSource;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import tools.jackson.databind.SerializationFeature;
+import tools.jackson.databind.json.JsonMapper;
 
 @SpringBootTest
 class PatchSignalsTest implements WithAssertions {
@@ -35,6 +41,29 @@ class PatchSignalsTest implements WithAssertions {
     assertThat(emitter2.getEmittedData()).contains("data: signals {\"bar\":2,\"foo\":1}");
   }
 
+  @Test
+  void signalsAreKeptWithTheFrameOnlyWhenCompared() {
+    DatastarConnections connections = new DatastarConnections();
+    EventDispatcher dispatcher = EventDispatcher.builder().connections(connections).build();
+    Datastar datastar =
+        Datastar.builder(mock(TemplateEngine.class), ".jte", new StaticMessageSource())
+            .dispatcher(dispatcher)
+            .connections(connections)
+            .build();
+
+    assertThat(datastar.preparePatchSignals(patch -> patch.signal("foo", 1)).frame().signals())
+        .isNull();
+    assertThat(
+            datastar
+                .preparePatchSignals(patch -> patch.signal("foo", 1).onlyChanged())
+                .frame()
+                .signals())
+        .isNotNull();
+    // Later frames keep the values last sent to the connections up to date
+    assertThat(datastar.preparePatchSignals(patch -> patch.signal("foo", 2)).frame().signals())
+        .isNotNull();
+  }
+
   @Test
   void removeSignal() {
     CapturingSseEmitter emitter = new CapturingSseEmitter();
@@ -67,4 +96,14 @@ class PatchSignalsTest implements WithAssertions {
 
     assertThat(emitter.getEmittedData()).contains("onlyIfMissing false");
   }
+
+  @Test
+  void patchSignalsPrettyPrinted() {
+    CapturingSseEmitter emitter = new CapturingSseEmitter();
+    JsonMapper jsonMapper = JsonMapper.builder().enable(SerializationFeature.INDENT_OUTPUT).build();
+    new PatchSignals(Set.of(emitter), new EventDispatcher(), jsonMapper).signal("foo", 1).emit();
+
+    assertThat(emitter.getEmittedData())
+        .contains("data: signals {\ndata: signals   \"foo\" : 1\ndata: signals }\n\n");
+  }
 }
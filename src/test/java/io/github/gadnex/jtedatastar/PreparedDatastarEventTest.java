@@ -0,0 +1,52 @@
+package io.github.gadnex.jtedatastar;
+
+import org.assertj.core.api.WithAssertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+@SpringBootTest
+class PreparedDatastarEventTest implements WithAssertions {
+
+  @Autowired private Datastar datastar;
+  @Autowired private DatastarConnections connections;
+
+  @Test
+  void preparedEventIsSentAgainWithoutId() {
+    PreparedDatastarEvent clearForm =
+        datastar.preparePatchSignals(patch -> patch.signal("name", "").signal("email", ""));
+    CapturingSseEmitter emitter = new CapturingSseEmitter();
+    clearForm.emit(emitter);
+    clearForm.emit(emitter);
+
+    assertThat(emitter.getEmittedData())
+        .doesNotContain("id:")
+        .isEqualTo(clearForm.frame().toString() + clearForm.frame());
+  }
+
+  @Test
+  void preparedElementsAndScriptToTopic() {
+    CapturingSseEmitter emitter = new CapturingSseEmitter();
+    connections.register("prepared", emitter);
+    PreparedDatastarEvent spinner =
+        datastar.preparePatchElements(
+            patch -> patch.selector("#greeting").template("Hello").attribute("name", "..."));
+    PreparedDatastarEvent log =
+        datastar.prepareExecuteScript(script -> script.script("console.log('loading')"));
+    spinner.emit("prepared");
+    log.emit("prepared");
+
+    assertThat(emitter.getEmittedData())
+        .contains("data: elements Hello ...!")
+        .contains("data: elements console.log('loading')");
+    assertThat(emitter.getSendCount()).isEqualTo(2);
+  }
+
+  @Test
+  void preparedEventNeedsEmitters() {
+    PreparedDatastarEvent log =
+        datastar.prepareExecuteScript(script -> script.script("console.log('loading')"));
+
+    assertThatIllegalArgumentException().isThrownBy(() -> log.emit(" "));
+  }
+}
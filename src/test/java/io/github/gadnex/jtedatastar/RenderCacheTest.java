@@ -0,0 +1,78 @@
+package io.github.gadnex.jtedatastar;
+
+import java.time.Duration;
+import java.util.Locale;
+import org.assertj.core.api.WithAssertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+@SpringBootTest
+class RenderCacheTest implements WithAssertions {
+
+  @Autowired private Datastar datastar;
+  @Autowired private RenderCache renderCache;
+
+  @BeforeEach
+  void clearCache() {
+    renderCache.invalidateAll();
+  }
+
+  @Test
+  void cacheKeyReusesRenderedHtml() {
+    CapturingSseEmitter emitter = new CapturingSseEmitter();
+    datastar.patchElements(emitter).template("Hello").attribute("name", "John").cacheKey(1).emit();
+    long hits = renderCache.hits();
+    datastar.patchElements(emitter).template("Hello").attribute("name", "Jane").cacheKey(1).emit();
+
+    assertThat(renderCache.hits()).isEqualTo(hits + 1);
+    assertThat(emitter.getEmittedData()).doesNotContain("Hello Jane!");
+  }
+
+  @Test
+  void invalidateTemplate() {
+    CapturingSseEmitter emitter = new CapturingSseEmitter();
+    datastar.patchElements(emitter).template("Hello").attribute("name", "John").cacheKey(1).emit();
+    renderCache.invalidate("Hello");
+    datastar.patchElements(emitter).template("Hello").attribute("name", "Jane").cacheKey(1).emit();
+
+    assertThat(emitter.getEmittedData()).contains("Hello John!").contains("Hello Jane!");
+  }
+
+  @Test
+  void cachedByAttributes() {
+    CapturingSseEmitter emitter = new CapturingSseEmitter();
+    long misses = renderCache.misses();
+    datastar.patchElements(emitter).template("Hello").attribute("name", "John").cached().emit();
+    datastar.patchElements(emitter).template("Hello").attribute("name", "Jane").cached().emit();
+    datastar.patchElements(emitter).template("Hello").attribute("name", "John").cached().emit();
+
+    assertThat(renderCache.misses()).isEqualTo(misses + 2);
+    assertThat(renderCache.size()).isEqualTo(2);
+    assertThat(emitter.getEmittedData()).contains("Hello John!").contains("Hello Jane!");
+  }
+
+  @Test
+  void evictLeastRecentlyUsed() {
+    RenderCache cache = new RenderCache(1, Duration.ZERO);
+    RenderCache.Key first = new RenderCache.Key("Hello", 1, Locale.ENGLISH);
+    RenderCache.Key second = new RenderCache.Key("Hello", 2, Locale.ENGLISH);
+    cache.put(first, new byte[] {1});
+    cache.put(second, new byte[] {2});
+
+    assertThat(cache.get(first)).isNull();
+    assertThat(cache.get(second)).containsExactly(2);
+    assertThat(cache.evictions()).isEqualTo(1);
+  }
+
+  @Test
+  void disabledCache() {
+    RenderCache cache = new RenderCache(0, Duration.ZERO);
+    RenderCache.Key key = new RenderCache.Key("Hello", 1, null);
+    cache.put(key, new byte[] {1});
+
+    assertThat(cache.isEnabled()).isFalse();
+    assertThat(cache.get(key)).isNull();
+  }
+}
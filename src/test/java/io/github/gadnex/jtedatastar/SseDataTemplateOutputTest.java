@@ -0,0 +1,77 @@
+package io.github.gadnex.jtedatastar;
+
+import java.nio.charset.StandardCharsets;
+import org.assertj.core.api.WithAssertions;
+import org.junit.jupiter.api.Test;
+
+class SseDataTemplateOutputTest implements WithAssertions {
+
+  private static String render(String... chunks) {
+    SseFrame.Builder event = SseFrame.builder();
+    var output = new SseDataTemplateOutput(event, " elements ");
+    for (String chunk : chunks) {
+      output.writeContent(chunk);
+    }
+    output.finish();
+    return event.build().toString();
+  }
+
+  @Test
+  void trimLinesAndSkipEmptyLines() {
+    assertThat(render("\n  <div id=\"a\">  \r\n\t\n    Hello  John!\n</div>"))
+        .isEqualTo(
+            "data: elements <div id=\"a\">\n"
+                + "data: elements Hello  John!\n"
+                + "data: elements </div>\n\n");
+  }
+
+  @Test
+  void whitespaceAcrossChunks() {
+    assertThat(render("  <p>", "Hello ", " ", "John", "   ", "\n", "  ", "</p>  "))
+        .isEqualTo("data: elements <p>Hello  John\ndata: elements </p>\n\n");
+  }
+
+  @Test
+  void minifiedTemplateLinesAreWrittenVerbatim() {
+    SseFrame.Builder event = SseFrame.builder();
+    var output = new SseDataTemplateOutput(event, " elements ", false);
+    output.writeContent("\n<pre>\n  a\n\n  b</pre>\n");
+    output.writeBinaryContent("<p> x </p>\n\n".getBytes(StandardCharsets.UTF_8));
+    output.finish();
+
+    assertThat(event.build().toString())
+        .isEqualTo(
+            "data: elements <pre>\n"
+                + "data: elements   a\n"
+                + "data: elements \n"
+                + "data: elements   b</pre>\n"
+                + "data: elements <p> x </p>\n\n");
+  }
+
+  @Test
+  void substring() {
+    SseFrame.Builder event = SseFrame.builder();
+    var output = new SseDataTemplateOutput(event, " elements ");
+    output.writeContent("xx <b>ö</b> xx", 2, 12);
+    output.finish();
+
+    assertThat(event.build().toString()).isEqualTo("data: elements <b>ö</b>\n\n");
+  }
+
+  @Test
+  void binaryContent() {
+    SseFrame.Builder event = SseFrame.builder();
+    var output = new SseDataTemplateOutput(event, " elements ");
+    output.writeBinaryContent("  <b>ö</b> \n <i>".getBytes(StandardCharsets.UTF_8));
+    output.writeContent("x</i>");
+    output.finish();
+
+    assertThat(event.build().toString())
+        .isEqualTo("data: elements <b>ö</b>\ndata: elements <i>x</i>\n\n");
+  }
+
+  @Test
+  void emptyOutput() {
+    assertThat(render(" \n \r\n")).isEqualTo("\n");
+  }
+}